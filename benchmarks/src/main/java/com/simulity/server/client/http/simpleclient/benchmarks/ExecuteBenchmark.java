@@ -0,0 +1,144 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient.benchmarks;
+
+import com.simulity.server.client.http.simpleclient.ConnectionPoolConfiguration;
+import com.simulity.server.client.http.simpleclient.LoopbackHttpServer;
+import com.simulity.server.client.http.simpleclient.SimulityHttpClient;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.methods.HttpGet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips through {@link SimulityHttpClient#execute} against an
+ * in-process loopback server, comparing a pooled instance shared by all
+ * benchmark threads with a single-threaded instance per thread. Run with
+ * {@code -t} to vary the number of threads and {@code -prof gc} for the
+ * allocation rate.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ExecuteBenchmark {
+
+    /**
+     * Server shared by every thread of a run.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"128", "16384"})
+        private int _bodySize;
+        @Param({"false", "true"})
+        private boolean _chunked;
+        private LoopbackHttpServer _server;
+        private String _url;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            _server = new LoopbackHttpServer().bodySize(_bodySize).chunked(_chunked, 4096).start();
+            _url = _server.url();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            _server.close();
+        }
+    }
+
+    /**
+     * Pooled instance shared by every thread of a run.
+     */
+    @State(Scope.Benchmark)
+    public static class PooledClient {
+
+        private SimulityHttpClient _client;
+
+        @Setup(Level.Trial)
+        public void build() {
+            _client = SimulityHttpClient.builder().supportHttp()
+                    .poolConfiguration(new ConnectionPoolConfiguration()).build();
+        }
+
+        @TearDown(Level.Trial)
+        public void destroy() {
+            _client.destroy();
+        }
+    }
+
+    /**
+     * Single-threaded instance of each thread.
+     */
+    @State(Scope.Thread)
+    public static class SingleClient {
+
+        private SimulityHttpClient _client;
+
+        @Setup(Level.Trial)
+        public void build() {
+            _client = SimulityHttpClient.builder().supportHttp().singleThreaded().build();
+        }
+
+        @TearDown(Level.Trial)
+        public void destroy() {
+            _client.destroy();
+        }
+    }
+
+    @Benchmark
+    public String pooled(Server server, PooledClient pooled) throws IOException {
+        return execute(pooled._client, server._url);
+    }
+
+    @Benchmark
+    public String single(Server server, SingleClient single) throws IOException {
+        return execute(single._client, server._url);
+    }
+
+    private static String execute(SimulityHttpClient client, String url) throws IOException {
+        HttpGet get = client.get(url);
+        return client.responseToString(client.execute(get), get);
+    }
+}
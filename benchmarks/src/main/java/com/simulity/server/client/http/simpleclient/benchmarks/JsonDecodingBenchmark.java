@@ -0,0 +1,125 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.simulity.server.client.http.simpleclient.JsonResponseReader;
+import com.simulity.server.client.http.simpleclient.SimulityHttpClient;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of binding JSON array responses: reading the body as a string and
+ * parsing it, binding from the entity stream, and streaming the elements.
+ * Run with {@code -prof gc} to compare the allocation rate.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonDecodingBenchmark {
+
+    @Param({"10", "10000"})
+    private int _elementCount;
+    private SimulityHttpClient _client;
+    private ObjectMapper _mapper;
+    private HttpGet _request;
+    private byte[] _body;
+
+    @Setup
+    public void setup() {
+        _mapper = new ObjectMapper();
+        _client = SimulityHttpClient.builder().supportHttp().singleThreaded().objectMapper(_mapper).build();
+        _request = _client.get("http://localhost:8081/");
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < _elementCount; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"iccid\":\"89440000000000").append(i)
+                    .append("\",\"state\":\"ENABLED\",\"version\":").append(i).append('}');
+        }
+        _body = json.append(']').toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        _client.destroy();
+    }
+
+    @Benchmark
+    public JsonNode stringThenParse() throws IOException {
+        return _mapper.readTree(_client.responseToString(response(), _request));
+    }
+
+    @Benchmark
+    public JsonNode responseAs() throws IOException {
+        return _client.responseAs(response(), _request, JsonNode.class);
+    }
+
+    @Benchmark
+    public long streamJsonArray(final Blackhole blackhole) throws IOException {
+        return _client.streamJsonArray(response(), _request, JsonNode.class, new JsonResponseReader.ElementHandler<JsonNode>() {
+            @Override
+            public void onElement(JsonNode element) {
+                blackhole.consume(element);
+            }
+        });
+    }
+
+    private HttpResponse response() {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(_body));
+        entity.setContentLength(_body.length);
+        entity.setContentType("application/json; charset=UTF-8");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(entity);
+        return response;
+    }
+}
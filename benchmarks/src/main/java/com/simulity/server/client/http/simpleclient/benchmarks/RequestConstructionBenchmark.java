@@ -0,0 +1,117 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient.benchmarks;
+
+import com.simulity.server.client.http.simpleclient.RequestBodyEncoder;
+import com.simulity.server.client.http.simpleclient.SimulityHttpClient;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.message.BasicNameValuePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building requests with the SimulityHttpClient builders and of
+ * encoding form parameters.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestConstructionBenchmark {
+
+    private static final String URL = "http://localhost:8081/resource?id=42";
+    @Param({"1", "16"})
+    private int _parameterCount;
+    private SimulityHttpClient _client;
+    private ArrayList<NameValuePair> _parameters;
+
+    @Setup
+    public void setup() {
+        _client = SimulityHttpClient.builder().supportHttp().singleThreaded().build();
+        _parameters = new ArrayList<NameValuePair>();
+        for (int i = 0; i < _parameterCount; i++) {
+            _parameters.add(new BasicNameValuePair("name" + i, "value " + i + " & more"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        _client.destroy();
+    }
+
+    @Benchmark
+    public HttpGet get() {
+        return _client.get(URL);
+    }
+
+    @Benchmark
+    public HttpPost post() throws UnsupportedEncodingException {
+        return _client.post(URL, _parameters);
+    }
+
+    @Benchmark
+    public HttpPut put() throws UnsupportedEncodingException {
+        return _client.put(URL, _parameters);
+    }
+
+    @Benchmark
+    public HttpPatch patch() throws UnsupportedEncodingException {
+        return _client.patch(URL, _parameters);
+    }
+
+    @Benchmark
+    public UrlEncodedFormEntity formEncoding() throws UnsupportedEncodingException {
+        return new UrlEncodedFormEntity(_parameters);
+    }
+
+    @Benchmark
+    public HttpEntity formEncoder() {
+        return RequestBodyEncoder.form(_parameters);
+    }
+}
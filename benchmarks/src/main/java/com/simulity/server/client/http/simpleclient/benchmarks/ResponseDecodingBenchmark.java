@@ -0,0 +1,108 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient.benchmarks;
+
+import com.simulity.server.client.http.simpleclient.SimulityHttpClient;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of decoding response bodies of various sizes, with and without a
+ * declared Content-Length, independently of the network.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodingBenchmark {
+
+    @Param({"128", "8192", "1048576"})
+    private int _bodySize;
+    @Param({"true", "false"})
+    private boolean _knownLength;
+    private SimulityHttpClient _client;
+    private HttpGet _request;
+    private byte[] _body;
+
+    @Setup
+    public void setup() {
+        _client = SimulityHttpClient.builder().supportHttp().singleThreaded().build();
+        _request = _client.get("http://localhost:8081/");
+        _body = new byte[_bodySize];
+        Arrays.fill(_body, (byte) 'x');
+        for (int i = 63; i < _body.length; i += 64) {
+            _body[i] = '\n';
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        _client.destroy();
+    }
+
+    @Benchmark
+    public String responseToString() throws IOException {
+        return _client.responseToString(response(), _request);
+    }
+
+    @Benchmark
+    public byte[] responseToBytes() throws IOException {
+        return _client.responseToBytes(response(), _request);
+    }
+
+    private HttpResponse response() {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(_body));
+        entity.setContentLength(_knownLength ? _body.length : -1);
+        entity.setContentType("text/plain; charset=ISO-8859-1");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(entity);
+        return response;
+    }
+}
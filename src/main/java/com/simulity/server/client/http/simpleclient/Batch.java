@@ -0,0 +1,226 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+
+/**
+ * Runs the requests of one {@link SimulityHttpClient#executeBatch} call. A
+ * fixed number of workers (the concurrency window) take requests from per
+ * host queues in turn, skipping hosts that are at their limit, so that one
+ * slow or large host cannot hold up the others and no more threads or
+ * connections are used than the window allows.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class Batch {
+
+    private final SimulityHttpClient _client;
+    private final List<? extends HttpUriRequest> _requests;
+    private final BatchResult[] _results;
+    private final int _concurrency;
+    private final int _maxPerHost;
+    private final Map<HttpHost, Deque<Integer>> _pending = new HashMap<HttpHost, Deque<Integer>>();
+    private final List<HttpHost> _hosts = new ArrayList<HttpHost>();
+    private final Map<HttpHost, Integer> _active = new HashMap<HttpHost, Integer>();
+    private int _next;
+    private int _remaining;
+    private int _workers;
+    private Error _error;
+    private boolean _cancelled;
+
+    Batch(SimulityHttpClient client, List<? extends HttpUriRequest> requests, int concurrency, int maxPerHost) {
+        _client = client;
+        _requests = requests;
+        _results = new BatchResult[requests.size()];
+        _concurrency = Math.min(concurrency, requests.size());
+        _maxPerHost = maxPerHost;
+        _remaining = requests.size();
+        for (int i = 0; i < requests.size(); i++) {
+            HttpHost host = URIUtils.extractHost(requests.get(i).getURI());
+            Deque<Integer> queue = _pending.get(host);
+            if (queue == null) {
+                queue = new ArrayDeque<Integer>();
+                _pending.put(host, queue);
+                _hosts.add(host);
+            }
+            queue.add(i);
+        }
+    }
+
+    /**
+     * @param executor executor running the workers
+     * @return the results in the order of the requests; requests left when
+     * the workers stopped early (interrupted by the executor) failed with an
+     * InterruptedIOException
+     * @throws InterruptedException if interrupted while waiting, in which
+     * case the outstanding requests are aborted
+     */
+    List<BatchResult> run(Executor executor) throws InterruptedException {
+        try {
+            for (int i = 0; i < _concurrency; i++) {
+                synchronized (this) {
+                    _workers++;
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                });
+            }
+            synchronized (this) {
+                while (_remaining > 0 && _workers > 0 && _error == null) {
+                    wait();
+                }
+                if (_error != null) {
+                    // The other requests are aborted, the error is the caller's.
+                    cancel();
+                    throw _error;
+                }
+                if (_remaining > 0) {
+                    cancel();
+                    for (int i = 0; i < _results.length; i++) {
+                        if (_results[i] == null) {
+                            _results[i] = new BatchResult(_requests.get(i), null,
+                                    new InterruptedIOException("Batch stopped before the request was sent"));
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            cancel();
+            throw ex;
+        } catch (RuntimeException ex) {
+            cancel();
+            throw ex;
+        }
+        return Arrays.asList(_results);
+    }
+
+    private void work() {
+        try {
+            int index;
+            while ((index = next()) >= 0) {
+                HttpUriRequest request = _requests.get(index);
+                BatchResult result;
+                try {
+                    result = new BatchResult(request, ResponseBodyReader.buffer(_client.execute(request)), null);
+                } catch (Exception ex) {
+                    request.abort();
+                    result = new BatchResult(request, null, ex);
+                } catch (Error ex) {
+                    request.abort();
+                    failed(ex);
+                    throw ex;
+                }
+                done(index, result);
+            }
+        } finally {
+            exited();
+        }
+    }
+
+    /**
+     * @return index of the next request to run, or -1 when there is none
+     * left
+     */
+    private synchronized int next() {
+        while (!_cancelled && !_hosts.isEmpty()) {
+            for (int i = 0; i < _hosts.size(); i++) {
+                int position = (_next + i) % _hosts.size();
+                HttpHost host = _hosts.get(position);
+                int active = active(host);
+                if (active < _maxPerHost) {
+                    Deque<Integer> queue = _pending.get(host);
+                    int index = queue.poll();
+                    if (queue.isEmpty()) {
+                        _pending.remove(host);
+                        _hosts.remove(position);
+                        _next = position;
+                    } else {
+                        _next = position + 1;
+                    }
+                    _active.put(host, active + 1);
+                    return index;
+                }
+            }
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized void done(int index, BatchResult result) {
+        HttpHost host = URIUtils.extractHost(result.getRequest().getURI());
+        _active.put(host, active(host) - 1);
+        _results[index] = result;
+        _remaining--;
+        notifyAll();
+    }
+
+    private synchronized void failed(Error error) {
+        if (_error == null) {
+            _error = error;
+        }
+        notifyAll();
+    }
+
+    private synchronized void exited() {
+        _workers--;
+        notifyAll();
+    }
+
+    private int active(HttpHost host) {
+        Integer active = _active.get(host);
+        return active == null ? 0 : active;
+    }
+
+    private void cancel() {
+        synchronized (this) {
+            _cancelled = true;
+            notifyAll();
+        }
+        for (HttpUriRequest request : _requests) {
+            request.abort();
+        }
+    }
+}
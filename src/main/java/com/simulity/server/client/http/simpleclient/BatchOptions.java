@@ -0,0 +1,86 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+/**
+ * Limits applied by {@link SimulityHttpClient#executeBatch}. The defaults
+ * follow the connection pool of the client, so a batch never waits on the
+ * pool for a connection: at most the maximum total of connections are in
+ * flight, and at most the default maximum per route to any one host.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class BatchOptions {
+
+    private int _concurrency;
+    private int _maxPerHost;
+
+    /**
+     * @param concurrency maximum number of requests of the batch in flight
+     * at any time
+     * @return BatchOptions with the concurrency window applied.
+     */
+    public BatchOptions concurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        _concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param maxPerHost maximum number of requests of the batch in flight to
+     * a single host; hosts with requests waiting are served in turn
+     * @return BatchOptions with the per host limit applied.
+     */
+    public BatchOptions maxPerHost(int maxPerHost) {
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException("Max per host must be positive: " + maxPerHost);
+        }
+        _maxPerHost = maxPerHost;
+        return this;
+    }
+
+    /**
+     * @return concurrency window, zero for the maximum total of the pool
+     */
+    public int getConcurrency() {
+        return _concurrency;
+    }
+
+    /**
+     * @return per host limit, zero for the default maximum per route of the
+     * pool
+     */
+    public int getMaxPerHost() {
+        return _maxPerHost;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOptions{concurrency=" + _concurrency + ", maxPerHost=" + _maxPerHost + "}";
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Outcome of one request of a batch: either the response, with a buffered
+ * entity, or the exception the request failed with.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public final class BatchResult {
+
+    private final HttpUriRequest _request;
+    private final HttpResponse _response;
+    private final Exception _failure;
+
+    BatchResult(HttpUriRequest request, HttpResponse response, Exception failure) {
+        _request = request;
+        _response = response;
+        _failure = failure;
+    }
+
+    public HttpUriRequest getRequest() {
+        return _request;
+    }
+
+    /**
+     * @return the response, or null when the request failed
+     */
+    public HttpResponse getResponse() {
+        return _response;
+    }
+
+    /**
+     * @return the cause of the failure, or null when a response was received
+     */
+    public Exception getFailure() {
+        return _failure;
+    }
+
+    public boolean isSuccess() {
+        return _failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{uri=" + _request.getURI() + ", "
+                + (_failure == null ? "status=" + _response.getStatusLine().getStatusCode() : "failure=" + _failure)
+                + "}";
+    }
+}
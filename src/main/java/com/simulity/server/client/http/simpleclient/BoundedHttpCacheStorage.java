@@ -0,0 +1,121 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+
+/**
+ * Cache storage bounded by both the number of entries and their total size
+ * (bodies and headers), evicting the least recently used entries first.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class BoundedHttpCacheStorage implements HttpCacheStorage {
+
+    private static final int ENTRY_OVERHEAD = 256;
+    private final LinkedHashMap<String, HttpCacheEntry> _entries = new LinkedHashMap<String, HttpCacheEntry>(16, 0.75f, true);
+    private final int _maxEntries;
+    private final long _maxBytes;
+    private long _bytes;
+
+    BoundedHttpCacheStorage(int maxEntries, long maxBytes) {
+        _maxEntries = maxEntries;
+        _maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized void putEntry(String key, HttpCacheEntry entry) {
+        HttpCacheEntry previous = _entries.put(key, entry);
+        if (previous != null) {
+            _bytes -= sizeOf(previous);
+        }
+        _bytes += sizeOf(entry);
+        evict();
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(String key) {
+        return _entries.get(key);
+    }
+
+    @Override
+    public synchronized void removeEntry(String key) {
+        HttpCacheEntry removed = _entries.remove(key);
+        if (removed != null) {
+            _bytes -= sizeOf(removed);
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException {
+        HttpCacheEntry updated = callback.update(_entries.get(key));
+        if (updated == null) {
+            removeEntry(key);
+        } else {
+            putEntry(key, updated);
+        }
+    }
+
+    /**
+     * @return number of cached entries
+     */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * @return total size of the cached entries
+     */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, HttpCacheEntry>> eldest = _entries.entrySet().iterator();
+        while ((_entries.size() > _maxEntries || _bytes > _maxBytes) && eldest.hasNext()) {
+            _bytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(HttpCacheEntry entry) {
+        long size = ENTRY_OVERHEAD;
+        if (entry.getResource() != null) {
+            size += entry.getResource().length();
+        }
+        for (Header header : entry.getAllHeaders()) {
+            size += header.getName().length() + header.getValue().length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import org.apache.http.impl.client.cache.CacheConfig;
+
+/**
+ * Opt-in HTTP response cache in front of
+ * {@link SimulityHttpClient#execute}, see
+ * {@link SimulityHttpClient.Builder#cache(CacheConfiguration)}. Responses are
+ * cached and revalidated according to Cache-Control, Expires, ETag and
+ * Last-Modified; the least recently used entries are evicted once either the
+ * number of entries or their total size exceeds its bound.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class CacheConfiguration {
+
+    private int _maxEntries = 1000;
+    private long _maxBytes = 64L * 1024 * 1024;
+    private long _maxObjectSize = 1024 * 1024;
+    private boolean _offHeap;
+    private boolean _sharedCache;
+
+    /**
+     * @param maxEntries maximum number of cached responses
+     * @return CacheConfiguration with the entry bound applied.
+     */
+    public CacheConfiguration maxEntries(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        _maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * @param maxBytes maximum total size of the cached responses
+     * @return CacheConfiguration with the size bound applied.
+     */
+    public CacheConfiguration maxBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+        }
+        _maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * @param maxObjectSize largest response body that is cached
+     * @return CacheConfiguration with the object size bound applied.
+     */
+    public CacheConfiguration maxObjectSize(long maxObjectSize) {
+        if (maxObjectSize < 1) {
+            throw new IllegalArgumentException("Max object size must be positive: " + maxObjectSize);
+        }
+        _maxObjectSize = maxObjectSize;
+        return this;
+    }
+
+    /**
+     * @param offHeap whether cached bodies are held in direct buffers outside
+     * of the Java heap
+     * @return CacheConfiguration with the store applied.
+     */
+    public CacheConfiguration offHeap(boolean offHeap) {
+        _offHeap = offHeap;
+        return this;
+    }
+
+    /**
+     * @param sharedCache whether the cache behaves as a shared cache, which
+     * does not store private or authorised responses
+     * @return CacheConfiguration with the cache type applied.
+     */
+    public CacheConfiguration sharedCache(boolean sharedCache) {
+        _sharedCache = sharedCache;
+        return this;
+    }
+
+    public int getMaxEntries() {
+        return _maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    public long getMaxObjectSize() {
+        return _maxObjectSize;
+    }
+
+    public boolean isOffHeap() {
+        return _offHeap;
+    }
+
+    public boolean isSharedCache() {
+        return _sharedCache;
+    }
+
+    /**
+     * @return the configuration of the Apache caching client
+     */
+    CacheConfig toCacheConfig() {
+        CacheConfig config = new CacheConfig();
+        config.setMaxCacheEntries(_maxEntries);
+        config.setMaxObjectSize(_maxObjectSize);
+        config.setSharedCache(_sharedCache);
+        // Revalidate in the calling thread, no background workers.
+        config.setAsynchronousWorkersMax(0);
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheConfiguration{maxEntries=" + _maxEntries
+                + ", maxBytes=" + _maxBytes
+                + ", maxObjectSize=" + _maxObjectSize
+                + ", offHeap=" + _offHeap
+                + ", sharedCache=" + _sharedCache + "}";
+    }
+}
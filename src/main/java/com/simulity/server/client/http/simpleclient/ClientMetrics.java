@@ -0,0 +1,257 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency, throughput and connection pool figures of a client. Recording is
+ * lock free; every getter returns a snapshot taken at the time of the call.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientMetrics.class);
+    /**
+     * Metrics of the exchange running on the current thread, used by the
+     * socket factories which are shared between clients.
+     */
+    static final ThreadLocal<ClientMetrics> CURRENT = new ThreadLocal<ClientMetrics>();
+    private final String _name;
+    private final LatencyHistogram _leaseWait = new LatencyHistogram();
+    private final LatencyHistogram _connect = new LatencyHistogram();
+    private final LatencyHistogram _timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram _total = new LatencyHistogram();
+    private final LongAdder _requests = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    private final LongAdder _bytesRead = new LongAdder();
+    private final ConcurrentMap<HttpRoute, Boolean> _routes = new ConcurrentHashMap<HttpRoute, Boolean>();
+    private volatile ClientConnectionManager _connectionManager;
+    private volatile ObjectName _objectName;
+
+    ClientMetrics(String name) {
+        _name = name;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public long getRequests() {
+        return _requests.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return _failures.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return _bytesRead.sum();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getLeaseWait() {
+        return _leaseWait.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getConnect() {
+        return _connect.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getTimeToFirstByte() {
+        return _timeToFirstByte.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getTotal() {
+        return _total.snapshot();
+    }
+
+    @Override
+    public PoolSnapshot getPool() {
+        ClientConnectionManager connectionManager = _connectionManager;
+        if (connectionManager instanceof PoolingClientConnectionManager) {
+            return new PoolSnapshot(((PoolingClientConnectionManager) connectionManager).getTotalStats());
+        }
+        return new PoolSnapshot(null);
+    }
+
+    @Override
+    public Map<String, PoolSnapshot> getRoutes() {
+        Map<String, PoolSnapshot> routes = new TreeMap<String, PoolSnapshot>();
+        ClientConnectionManager connectionManager = _connectionManager;
+        if (connectionManager instanceof PoolingClientConnectionManager) {
+            PoolingClientConnectionManager pool = (PoolingClientConnectionManager) connectionManager;
+            for (HttpRoute route : _routes.keySet()) {
+                routes.put(route.getTargetHost().toURI(), new PoolSnapshot(pool.getStats(route)));
+            }
+        }
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientMetrics{name=" + _name + ", requests=" + getRequests() + ", failures=" + getFailures()
+                + ", bytesRead=" + getBytesRead() + ", leaseWait={" + getLeaseWait() + "}, connect={"
+                + getConnect() + "}, timeToFirstByte={" + getTimeToFirstByte() + "}, total={" + getTotal()
+                + "}, pool={" + getPool() + "}}";
+    }
+
+    void setConnectionManager(ClientConnectionManager connectionManager) {
+        _connectionManager = connectionManager;
+    }
+
+    void started(HttpUriRequest request) {
+        _requests.increment();
+        HttpHost target = URIUtils.extractHost(request.getURI());
+        if (target != null) {
+            boolean secure = "https".equalsIgnoreCase(target.getSchemeName());
+            if (target.getPort() < 0) {
+                target = new HttpHost(target.getHostName(), secure ? 443 : 80, target.getSchemeName());
+            }
+            HttpRoute route = new HttpRoute(target, null, secure);
+            if (!_routes.containsKey(route)) {
+                _routes.putIfAbsent(route, Boolean.TRUE);
+            }
+        }
+    }
+
+    void leased(long nanos) {
+        _leaseWait.record(nanos);
+    }
+
+    void connected(long nanos) {
+        _connect.record(nanos);
+    }
+
+    void received(long nanos) {
+        _timeToFirstByte.record(nanos);
+    }
+
+    void completed(long nanos, long bytes) {
+        _total.record(nanos);
+        _bytesRead.add(bytes);
+    }
+
+    void failed() {
+        _failures.increment();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, a name that is
+     * already taken is logged and skipped.
+     */
+    synchronized void register() {
+        if (_objectName != null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.simulity.server.client.http:type=SimulityHttpClient,name="
+                    + ObjectName.quote(_name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, objectName);
+            _objectName = objectName;
+            log.debug("Metrics registered: {}", objectName);
+        } catch (JMException ex) {
+            log.warn("Metrics could not be registered with JMX: " + _name, ex);
+        }
+    }
+
+    synchronized void unregister() {
+        ObjectName objectName = _objectName;
+        if (objectName == null) {
+            return;
+        }
+        _objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            log.warn("Metrics could not be unregistered from JMX: " + _name, ex);
+        }
+    }
+
+    /**
+     * Connection counts of a pool or a route of a pool.
+     */
+    public static class PoolSnapshot {
+
+        private final int _leased;
+        private final int _available;
+        private final int _pending;
+        private final int _max;
+
+        PoolSnapshot(PoolStats stats) {
+            _leased = stats == null ? 0 : stats.getLeased();
+            _available = stats == null ? 0 : stats.getAvailable();
+            _pending = stats == null ? 0 : stats.getPending();
+            _max = stats == null ? 0 : stats.getMax();
+        }
+
+        public int getLeased() {
+            return _leased;
+        }
+
+        public int getAvailable() {
+            return _available;
+        }
+
+        public int getPending() {
+            return _pending;
+        }
+
+        public int getMax() {
+            return _max;
+        }
+
+        @Override
+        public String toString() {
+            return "leased=" + _leased + " available=" + _available + " pending=" + _pending + " max=" + _max;
+        }
+    }
+}
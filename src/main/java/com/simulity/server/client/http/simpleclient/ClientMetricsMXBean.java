@@ -0,0 +1,82 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ClientMetrics} of a client, registered as
+ * {@code com.simulity.server.client.http:type=SimulityHttpClient,name=<name>}.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     * @return number of requests executed
+     */
+    long getRequests();
+
+    /**
+     * @return number of requests that failed with an exception
+     */
+    long getFailures();
+
+    /**
+     * @return number of response body bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * @return time spent waiting for a connection to be leased from the pool
+     */
+    LatencyHistogram.Snapshot getLeaseWait();
+
+    /**
+     * @return time spent opening new connections (including TLS handshakes)
+     */
+    LatencyHistogram.Snapshot getConnect();
+
+    /**
+     * @return time from execute until the response headers were received
+     */
+    LatencyHistogram.Snapshot getTimeToFirstByte();
+
+    /**
+     * @return time from execute until the response body was read
+     */
+    LatencyHistogram.Snapshot getTotal();
+
+    /**
+     * @return connections of the whole pool
+     */
+    ClientMetrics.PoolSnapshot getPool();
+
+    /**
+     * @return connections of the pool per route used by the client
+     */
+    Map<String, ClientMetrics.PoolSnapshot> getRoutes();
+}
@@ -0,0 +1,183 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the adaptive concurrency limit applied by
+ * {@link SimulityHttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}.
+ * Every route (scheme, host and port) has its own limit on the number of
+ * requests in flight, which grows by one with each response that arrives in
+ * time while the limit is in use and shrinks by the backoff ratio when a
+ * request fails, the backend sheds load (429, 503 or 504) or the time to
+ * response exceeds the tolerance times the lowest one seen. The limit thus
+ * follows the capacity of the backend instead of queueing callers behind the
+ * connection pool.
+ *
+ * Requests over the limit are rejected at once with a
+ * {@link ConcurrencyLimitExceededException}, unless a queue is configured in
+ * which case they wait up to the queue timeout for a request to complete.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ConcurrencyLimitConfiguration {
+
+    private int _initialLimit = 20;
+    private int _minLimit = 1;
+    private int _maxLimit = 200;
+    private double _backoffRatio = 0.9;
+    private double _rttTolerance = 2.0;
+    private int _maxQueued = 0;
+    private long _queueTimeout = 0;
+
+    /**
+     * @param initialLimit limit of a route before any response was received
+     * @return ConcurrencyLimitConfiguration with the initial limit applied.
+     */
+    public ConcurrencyLimitConfiguration initialLimit(int initialLimit) {
+        if (initialLimit < 1) {
+            throw new IllegalArgumentException("Initial limit must be positive: " + initialLimit);
+        }
+        _initialLimit = initialLimit;
+        return this;
+    }
+
+    /**
+     * @param minLimit lowest limit a route backs off to
+     * @param maxLimit highest limit a route grows to
+     * @return ConcurrencyLimitConfiguration with the bounds applied.
+     */
+    public ConcurrencyLimitConfiguration bounds(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limit bounds: " + minLimit + ".." + maxLimit);
+        }
+        _minLimit = minLimit;
+        _maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * @param backoffRatio factor the limit is multiplied by on overload,
+     * between zero and one
+     * @return ConcurrencyLimitConfiguration with the ratio applied.
+     */
+    public ConcurrencyLimitConfiguration backoffRatio(double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        _backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * @param rttTolerance multiple of the lowest time to response above which
+     * a response counts as a sign of overload, at least one
+     * @return ConcurrencyLimitConfiguration with the tolerance applied.
+     */
+    public ConcurrencyLimitConfiguration rttTolerance(double rttTolerance) {
+        if (rttTolerance < 1) {
+            throw new IllegalArgumentException("RTT tolerance must be at least 1: " + rttTolerance);
+        }
+        _rttTolerance = rttTolerance;
+        return this;
+    }
+
+    /**
+     * Queue requests over the limit instead of rejecting them straight away.
+     *
+     * @param maxQueued maximum number of requests waiting per route, zero to
+     * reject at once
+     * @param timeout maximum time a request waits for the limit
+     * @param unit unit of the timeout
+     * @return ConcurrencyLimitConfiguration with the queue applied.
+     */
+    public ConcurrencyLimitConfiguration queue(int maxQueued, long timeout, TimeUnit unit) {
+        if (maxQueued < 0 || timeout < 0) {
+            throw new IllegalArgumentException("Invalid queue: " + maxQueued + " for " + timeout + " " + unit);
+        }
+        _maxQueued = maxQueued;
+        _queueTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    public int getInitialLimit() {
+        return Math.min(Math.max(_initialLimit, _minLimit), _maxLimit);
+    }
+
+    public int getMinLimit() {
+        return _minLimit;
+    }
+
+    public int getMaxLimit() {
+        return _maxLimit;
+    }
+
+    public double getBackoffRatio() {
+        return _backoffRatio;
+    }
+
+    public double getRttTolerance() {
+        return _rttTolerance;
+    }
+
+    public int getMaxQueued() {
+        return _maxQueued;
+    }
+
+    /**
+     * @return queue timeout in nanoseconds
+     */
+    public long getQueueTimeout() {
+        return _queueTimeout;
+    }
+
+    /**
+     * @return an independent copy of this configuration
+     */
+    public ConcurrencyLimitConfiguration copy() {
+        ConcurrencyLimitConfiguration copy = new ConcurrencyLimitConfiguration();
+        copy._initialLimit = _initialLimit;
+        copy._minLimit = _minLimit;
+        copy._maxLimit = _maxLimit;
+        copy._backoffRatio = _backoffRatio;
+        copy._rttTolerance = _rttTolerance;
+        copy._maxQueued = _maxQueued;
+        copy._queueTimeout = _queueTimeout;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitConfiguration{initialLimit=" + _initialLimit
+                + ", minLimit=" + _minLimit
+                + ", maxLimit=" + _maxLimit
+                + ", backoffRatio=" + _backoffRatio
+                + ", rttTolerance=" + _rttTolerance
+                + ", maxQueued=" + _maxQueued
+                + ", queueTimeout=" + TimeUnit.NANOSECONDS.toMillis(_queueTimeout) + "ms}";
+    }
+}
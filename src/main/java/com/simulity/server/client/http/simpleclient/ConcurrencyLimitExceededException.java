@@ -0,0 +1,63 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import org.apache.http.HttpHost;
+
+/**
+ * Thrown when a request is turned away by the concurrency limit of its route,
+ * either at once or after waiting in the queue for the queue timeout. No
+ * request was sent, so it is safe to retry later or elsewhere.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    private final HttpHost _route;
+    private final int _limit;
+
+    public ConcurrencyLimitExceededException(HttpHost route, int limit) {
+        super("Concurrency limit of " + limit + " reached for " + route.toURI());
+        _route = route;
+        _limit = limit;
+    }
+
+    /**
+     * @return target host of the rejected request
+     */
+    public HttpHost getRoute() {
+        return _route;
+    }
+
+    /**
+     * @return limit of the route at the time of the rejection
+     */
+    public int getLimit() {
+        return _limit;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+
+/**
+ * Adaptive (AIMD) limit on the number of requests in flight per route, see
+ * {@link ConcurrencyLimitConfiguration}. The lowest time to response seen on
+ * a route stands for its time without load; it is measured afresh every
+ * {@value #RTT_PROBE_INTERVAL} responses so that the limit keeps up with a
+ * backend whose baseline changes. Only successful responses are measured: a
+ * fast failure says nothing about the time without load. The limit backs off at most once per round
+ * trip: only requests sent after the last backoff can cause another, so a
+ * burst of slow responses shrinks the limit once rather than once each.
+ *
+ * Queued requests wait on a ReentrantLock rather than a monitor, so that a
+ * virtual thread waiting for its place does not pin its carrier.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class ConcurrencyLimiter {
+
+    static final int RTT_PROBE_INTERVAL = 1000;
+    private final ConcurrencyLimitConfiguration _configuration;
+    private final ConcurrentMap<HttpHost, Limit> _limits = new ConcurrentHashMap<HttpHost, Limit>();
+
+    ConcurrencyLimiter(ConcurrencyLimitConfiguration configuration) {
+        _configuration = configuration.copy();
+    }
+
+    ConcurrencyLimitConfiguration getConfiguration() {
+        return _configuration;
+    }
+
+    /**
+     * @param uri target of a request
+     * @return limit of the route of the request, null when the URI has no host
+     */
+    Limit limitOf(URI uri) {
+        HttpHost route = route(URIUtils.extractHost(uri));
+        if (route == null) {
+            return null;
+        }
+        Limit limit = _limits.get(route);
+        if (limit == null) {
+            Limit created = new Limit(route, _configuration);
+            limit = _limits.putIfAbsent(route, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return current limit of every route used so far
+     */
+    Map<HttpHost, Integer> getLimits() {
+        Map<HttpHost, Integer> limits = new LinkedHashMap<HttpHost, Integer>();
+        for (Limit limit : _limits.values()) {
+            limits.put(limit.getRoute(), limit.getLimit());
+        }
+        return limits;
+    }
+
+    /**
+     * @return the host with the default port of its scheme filled in, so
+     * that a URL with and one without the port share a limit
+     */
+    private static HttpHost route(HttpHost host) {
+        if (host == null || host.getPort() >= 0) {
+            return host;
+        }
+        String scheme = host.getSchemeName();
+        return new HttpHost(host.getHostName(), "https".equalsIgnoreCase(scheme) ? 443 : 80, scheme);
+    }
+
+    /**
+     * Limit of a single route.
+     */
+    static final class Limit {
+
+        private final HttpHost _route;
+        private final ConcurrencyLimitConfiguration _configuration;
+        private final ReentrantLock _lock = new ReentrantLock();
+        private final Condition _released = _lock.newCondition();
+        private double _limit;
+        private int _inFlight;
+        private int _queued;
+        private long _noLoadRtt = Long.MAX_VALUE;
+        private long _samples;
+        private boolean _probing;
+        private long _lastBackoff = System.nanoTime();
+
+        Limit(HttpHost route, ConcurrencyLimitConfiguration configuration) {
+            _route = route;
+            _configuration = configuration;
+            _limit = configuration.getInitialLimit();
+        }
+
+        HttpHost getRoute() {
+            return _route;
+        }
+
+        int getLimit() {
+            _lock.lock();
+            try {
+                return (int) _limit;
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        int getInFlight() {
+            _lock.lock();
+            try {
+                return _inFlight;
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        /**
+         * Takes a place within the limit, waiting in the queue if one is
+         * configured.
+         *
+         * @return time the place was taken, to pass to
+         * {@link #release(long, boolean)}
+         * @throws ConcurrencyLimitExceededException if the route is at its
+         * limit and the queue is full or the wait timed out
+         * @throws InterruptedIOException if interrupted while queued
+         */
+        long acquire() throws IOException {
+            _lock.lock();
+            try {
+                if (_inFlight >= (int) _limit) {
+                    if (_queued >= _configuration.getMaxQueued()) {
+                        throw new ConcurrencyLimitExceededException(_route, (int) _limit);
+                    }
+                    _queued++;
+                    try {
+                        long remaining = _configuration.getQueueTimeout();
+                        while (_inFlight >= (int) _limit) {
+                            if (remaining <= 0) {
+                                throw new ConcurrencyLimitExceededException(_route, (int) _limit);
+                            }
+                            remaining = _released.awaitNanos(remaining);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the concurrency limit of " + _route.toURI());
+                    } finally {
+                        _queued--;
+                    }
+                }
+                _inFlight++;
+                return System.nanoTime();
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        /**
+         * Gives the place back and adjusts the limit to the outcome.
+         *
+         * @param start time returned by {@link #acquire()}
+         * @param dropped whether the request failed or the backend shed load
+         */
+        void release(long start, boolean dropped) {
+            _lock.lock();
+            try {
+                update(start, dropped);
+            } finally {
+                _lock.unlock();
+            }
+        }
+
+        private void update(long start, boolean dropped) {
+            long now = System.nanoTime();
+            long rtt = now - start;
+            int inFlight = _inFlight--;
+            int before = (int) _limit;
+            if (_samples++ % RTT_PROBE_INTERVAL == 0) {
+                _probing = true;
+            }
+            if (!dropped) {
+                // A dropped probe sample leaves the measuring to the next good one.
+                _noLoadRtt = _probing ? rtt : Math.min(_noLoadRtt, rtt);
+                _probing = false;
+            }
+            if (dropped || rtt > _noLoadRtt * _configuration.getRttTolerance()) {
+                if (start - _lastBackoff >= 0) {
+                    _limit = Math.max(_configuration.getMinLimit(), _limit * _configuration.getBackoffRatio());
+                    _lastBackoff = now;
+                }
+            } else if (inFlight * 2 >= _limit) {
+                _limit = Math.min(_configuration.getMaxLimit(), _limit + 1);
+            }
+            if (_queued > 0) {
+                if ((int) _limit > before) {
+                    _released.signalAll();
+                } else {
+                    _released.signal();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            _lock.lock();
+            try {
+                return _route.toURI() + "{limit=" + (int) _limit + ", inFlight=" + _inFlight + ", queued=" + _queued + "}";
+            } finally {
+                _lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * Sizing of the connection pool built by
+ * {@link SimulityHttpClient#setupThreadPool()}. The defaults scale with the
+ * number of available processors rather than using the Apache defaults of 2
+ * connections per route and 20 in total.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ConnectionPoolConfiguration {
+
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private int _maxTotal = Math.max(20, PROCESSORS * 32);
+    private int _defaultMaxPerRoute = Math.max(2, PROCESSORS * 8);
+    private final Map<HttpRoute, Integer> _maxPerRoute = new LinkedHashMap<HttpRoute, Integer>();
+    private long _connectionTtl = -1;
+    private long _leaseTimeout = 0;
+    private long _idleTimeout = -1;
+    private int _minIdlePerRoute = 0;
+
+    /**
+     * @param maxTotal maximum number of connections held by the pool
+     * @return ConnectionPoolConfiguration with the total applied.
+     */
+    public ConnectionPoolConfiguration maxTotal(int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("Max total must be positive: " + maxTotal);
+        }
+        _maxTotal = maxTotal;
+        return this;
+    }
+
+    /**
+     * @param defaultMaxPerRoute maximum number of connections per route when
+     * the route has no override
+     * @return ConnectionPoolConfiguration with the default applied.
+     */
+    public ConnectionPoolConfiguration defaultMaxPerRoute(int defaultMaxPerRoute) {
+        if (defaultMaxPerRoute < 1) {
+            throw new IllegalArgumentException("Default max per route must be positive: " + defaultMaxPerRoute);
+        }
+        _defaultMaxPerRoute = defaultMaxPerRoute;
+        return this;
+    }
+
+    /**
+     * Override the connection limit for a single plain HTTP host.
+     *
+     * @param host host name
+     * @param port port (as used in the request URL)
+     * @param max maximum number of connections to the host
+     * @return ConnectionPoolConfiguration with the override applied.
+     */
+    public ConnectionPoolConfiguration maxPerRoute(String host, int port, int max) {
+        return maxPerRoute(new HttpHost(host, port, "http"), max);
+    }
+
+    /**
+     * Override the connection limit for a single host; the scheme of the host
+     * decides whether the route is secure.
+     *
+     * @param host target host (name, port and scheme)
+     * @param max maximum number of connections to the host
+     * @return ConnectionPoolConfiguration with the override applied.
+     */
+    public ConnectionPoolConfiguration maxPerRoute(HttpHost host, int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max per route must be positive: " + max);
+        }
+        boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+        _maxPerRoute.put(new HttpRoute(host, null, secure), max);
+        return this;
+    }
+
+    /**
+     * @param ttl maximum life time of a pooled connection, or zero or a
+     * negative value for no limit
+     * @param unit unit of the ttl
+     * @return ConnectionPoolConfiguration with the time to live applied.
+     */
+    public ConnectionPoolConfiguration connectionTtl(long ttl, TimeUnit unit) {
+        _connectionTtl = ttl > 0 ? unit.toMillis(ttl) : -1;
+        return this;
+    }
+
+    /**
+     * @param timeout maximum time to wait for a connection to be leased from
+     * the pool, zero waits indefinitely
+     * @param unit unit of the timeout
+     * @return ConnectionPoolConfiguration with the lease timeout applied.
+     */
+    public ConnectionPoolConfiguration leaseTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Lease timeout must not be negative: " + timeout);
+        }
+        _leaseTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * @param timeout idle time after which a pooled connection is closed in
+     * the background, or zero or a negative value to keep idle connections
+     * @param unit unit of the timeout
+     * @return ConnectionPoolConfiguration with the idle timeout applied.
+     */
+    public ConnectionPoolConfiguration idleTimeout(long timeout, TimeUnit unit) {
+        _idleTimeout = timeout > 0 ? unit.toMillis(timeout) : -1;
+        return this;
+    }
+
+    /**
+     * Keeps connections open ahead of demand: every route leased from within
+     * the last five minutes is topped up, once a second, to this number of
+     * idle connections (within the route limit).
+     *
+     * @param minIdlePerRoute number of idle connections per route, zero to
+     * only open connections on demand
+     * @return ConnectionPoolConfiguration with the minimum applied.
+     */
+    public ConnectionPoolConfiguration minIdlePerRoute(int minIdlePerRoute) {
+        if (minIdlePerRoute < 0) {
+            throw new IllegalArgumentException("Min idle per route must not be negative: " + minIdlePerRoute);
+        }
+        _minIdlePerRoute = minIdlePerRoute;
+        return this;
+    }
+
+    public int getMaxTotal() {
+        return _maxTotal;
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return _defaultMaxPerRoute;
+    }
+
+    public Map<HttpRoute, Integer> getMaxPerRoute() {
+        return Collections.unmodifiableMap(_maxPerRoute);
+    }
+
+    /**
+     * @return connection time to live in milliseconds, negative for no limit
+     */
+    public long getConnectionTtl() {
+        return _connectionTtl;
+    }
+
+    /**
+     * @return lease timeout in milliseconds
+     */
+    public long getLeaseTimeout() {
+        return _leaseTimeout;
+    }
+
+    /**
+     * @return idle timeout in milliseconds, negative when idle connections are
+     * kept
+     */
+    public long getIdleTimeout() {
+        return _idleTimeout;
+    }
+
+    public int getMinIdlePerRoute() {
+        return _minIdlePerRoute;
+    }
+
+    /**
+     * Applies the limits to an existing pool. The time to live can only be set
+     * when the pool is constructed.
+     *
+     * @param connectionManager pool to resize
+     */
+    void applyTo(PoolingClientConnectionManager connectionManager) {
+        connectionManager.setMaxTotal(_maxTotal);
+        connectionManager.setDefaultMaxPerRoute(_defaultMaxPerRoute);
+        for (Map.Entry<HttpRoute, Integer> entry : _maxPerRoute.entrySet()) {
+            connectionManager.setMaxPerRoute(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return an independent copy of this configuration
+     */
+    public ConnectionPoolConfiguration copy() {
+        ConnectionPoolConfiguration copy = new ConnectionPoolConfiguration();
+        copy._maxTotal = _maxTotal;
+        copy._defaultMaxPerRoute = _defaultMaxPerRoute;
+        copy._maxPerRoute.putAll(_maxPerRoute);
+        copy._connectionTtl = _connectionTtl;
+        copy._leaseTimeout = _leaseTimeout;
+        copy._idleTimeout = _idleTimeout;
+        copy._minIdlePerRoute = _minIdlePerRoute;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ConnectionPoolConfiguration)) {
+            return false;
+        }
+        ConnectionPoolConfiguration other = (ConnectionPoolConfiguration) obj;
+        return _maxTotal == other._maxTotal
+                && _defaultMaxPerRoute == other._defaultMaxPerRoute
+                && _maxPerRoute.equals(other._maxPerRoute)
+                && _connectionTtl == other._connectionTtl
+                && _leaseTimeout == other._leaseTimeout
+                && _idleTimeout == other._idleTimeout
+                && _minIdlePerRoute == other._minIdlePerRoute;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = _maxTotal;
+        hash = 31 * hash + _defaultMaxPerRoute;
+        hash = 31 * hash + _maxPerRoute.hashCode();
+        hash = 31 * hash + (int) _connectionTtl;
+        hash = 31 * hash + (int) _leaseTimeout;
+        hash = 31 * hash + (int) _idleTimeout;
+        hash = 31 * hash + _minIdlePerRoute;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolConfiguration{maxTotal=" + _maxTotal
+                + ", defaultMaxPerRoute=" + _defaultMaxPerRoute
+                + ", maxPerRoute=" + _maxPerRoute
+                + ", connectionTtl=" + _connectionTtl + "ms"
+                + ", leaseTimeout=" + _leaseTimeout + "ms"
+                + ", idleTimeout=" + _idleTimeout + "ms"
+                + ", minIdlePerRoute=" + _minIdlePerRoute + "}";
+    }
+}
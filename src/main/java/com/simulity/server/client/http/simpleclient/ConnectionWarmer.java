@@ -0,0 +1,316 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens connections of a pool ahead of demand, so that the TCP connect and
+ * TLS handshake are not paid by the first requests to a route. Connections
+ * are opened in parallel on daemon threads and put back in the pool idle.
+ *
+ * With a minimum idle count the warmer also tops up, once a second, every
+ * route that requests leased from within the last five minutes.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class ConnectionWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionWarmer.class);
+    private static final ExecutorService OPENERS = Executors.newCachedThreadPool(new DaemonThreadFactory("simulity-http-warmer"));
+    private static final long MAINTENANCE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final long RECENT = TimeUnit.MINUTES.toNanos(5);
+    // Set while the warmer leases, so its own leases do not keep a route recent.
+    private static final ThreadLocal<Boolean> WARMING = new ThreadLocal<Boolean>();
+    private final PoolingClientConnectionManager _connectionManager;
+    private final HttpParams _params;
+    private final int _minIdle;
+    private final ConcurrentMap<HttpRoute, AtomicLong> _recentRoutes = new ConcurrentHashMap<HttpRoute, AtomicLong>();
+    private final AtomicBoolean _maintaining = new AtomicBoolean();
+    private final ScheduledFuture<?> _maintenance;
+
+    /**
+     * @param connectionManager pool to warm
+     * @param params connection parameters (timeouts) for opening connections,
+     * or null for the defaults
+     * @param minIdle number of idle connections kept open to each recently
+     * used route, zero to only warm on demand
+     */
+    ConnectionWarmer(PoolingClientConnectionManager connectionManager, HttpParams params, int minIdle) {
+        _connectionManager = connectionManager;
+        _params = params != null ? params : new BasicHttpParams();
+        _minIdle = minIdle;
+        if (minIdle > 0) {
+            final Runnable maintenance = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        maintain();
+                    } finally {
+                        _maintaining.set(false);
+                    }
+                }
+            };
+            // Opening blocks, so it is kept off the shared eviction thread.
+            _maintenance = IdleConnectionEvictor.scheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (_maintaining.compareAndSet(false, true)) {
+                        OPENERS.execute(maintenance);
+                    }
+                }
+            }, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+        } else {
+            _maintenance = null;
+        }
+    }
+
+    /**
+     * @return whether leased routes are tracked and topped up
+     */
+    boolean isMaintaining() {
+        return _maintenance != null;
+    }
+
+    /**
+     * Records that a route has just been leased from, unless the lease is
+     * the warmer's own.
+     *
+     * @param route route of the lease
+     */
+    void used(HttpRoute route) {
+        if (WARMING.get() != null) {
+            return;
+        }
+        AtomicLong lastUsed = _recentRoutes.get(route);
+        if (lastUsed == null) {
+            lastUsed = new AtomicLong();
+            AtomicLong existing = _recentRoutes.putIfAbsent(route, lastUsed);
+            if (existing != null) {
+                lastUsed = existing;
+            }
+        }
+        lastUsed.lazySet(System.nanoTime());
+    }
+
+    /**
+     * @param target host (name, port and scheme)
+     * @return the direct route to the host
+     */
+    HttpRoute route(HttpHost target) {
+        boolean secure = _connectionManager.getSchemeRegistry().getScheme(target).isLayered();
+        return new HttpRoute(target, null, secure);
+    }
+
+    /**
+     * Makes sure the pool holds at least the given number of idle connections
+     * to the route, within its limits, and waits for them to be opened. Only
+     * the missing connections are opened; idle connections the pool hands
+     * out on the way are put back before the opening starts.
+     *
+     * @param route route to warm
+     * @param connections number of connections wanted
+     * @return number of connections opened
+     * @throws IOException the first failure to open a connection; the others
+     * are still opened
+     */
+    int warm(HttpRoute route, int connections) throws IOException {
+        PoolStats routeStats = _connectionManager.getStats(route);
+        PoolStats totalStats = _connectionManager.getTotalStats();
+        int available = routeStats.getAvailable();
+        int missing = Math.min(connections - available,
+                Math.min(routeStats.getMax() - routeStats.getLeased() - available,
+                        totalStats.getMax() - totalStats.getLeased() - available));
+        if (missing <= 0) {
+            return 0;
+        }
+        List<ManagedClientConnection> leased = new ArrayList<ManagedClientConnection>(missing);
+        List<Future<Boolean>> opens = new ArrayList<Future<Boolean>>(missing);
+        IOException failure = null;
+        try {
+            // The pool hands out its idle connections first, those are only
+            // held until the new ones have been leased.
+            List<ManagedClientConnection> idle = new ArrayList<ManagedClientConnection>(available);
+            WARMING.set(Boolean.TRUE);
+            try {
+                for (int i = 0; i < available + missing && opens.size() < missing; i++) {
+                    final ManagedClientConnection connection;
+                    try {
+                        connection = _connectionManager.requestConnection(route, null).getConnection(1, TimeUnit.MILLISECONDS);
+                    } catch (ConnectionPoolTimeoutException ex) {
+                        // Leased by requests in the meantime.
+                        break;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (connection.isOpen()) {
+                        connection.markReusable();
+                        idle.add(connection);
+                    } else {
+                        leased.add(connection);
+                        opens.add(OPENERS.submit(new Opener(connection, route)));
+                    }
+                }
+            } finally {
+                WARMING.remove();
+                for (ManagedClientConnection connection : idle) {
+                    _connectionManager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+                }
+            }
+            int opened = 0;
+            for (Future<Boolean> open : opens) {
+                try {
+                    open.get();
+                    opened++;
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failure = new IOException("Interrupted while warming " + route);
+                }
+            }
+            if (opened > 0) {
+                log.debug("Opened {} connections to {}", opened, route);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return opened;
+        } finally {
+            for (ManagedClientConnection connection : leased) {
+                _connectionManager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Warms the route in the background, failures are logged.
+     *
+     * @param route route to warm
+     * @param connections number of connections wanted
+     */
+    void warmLater(final HttpRoute route, final int connections) {
+        OPENERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warm(route, connections);
+                } catch (IOException ex) {
+                    log.debug("Could not warm {}: {}", route, ex.toString());
+                } catch (RuntimeException ex) {
+                    log.debug("Could not warm {}: {}", route, ex.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * Tops up the idle connections of the recently used routes.
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        for (Map.Entry<HttpRoute, AtomicLong> entry : _recentRoutes.entrySet()) {
+            HttpRoute route = entry.getKey();
+            if (now - entry.getValue().get() > RECENT) {
+                _recentRoutes.remove(route, entry.getValue());
+                continue;
+            }
+            if (_connectionManager.getStats(route).getAvailable() >= _minIdle) {
+                continue;
+            }
+            try {
+                warm(route, _minIdle);
+            } catch (IOException ex) {
+                log.debug("Could not keep connections to {} warm: {}", route, ex.toString());
+            } catch (RuntimeException ex) {
+                // The pool has been shut down, stop with it.
+                log.debug("Stopping the warming of {}: {}", route, ex.toString());
+                stop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops topping up the pool.
+     */
+    void stop() {
+        if (_maintenance != null) {
+            _maintenance.cancel(false);
+        }
+    }
+
+    private final class Opener implements Callable<Boolean> {
+
+        private final ManagedClientConnection _connection;
+        private final HttpRoute _route;
+
+        private Opener(ManagedClientConnection connection, HttpRoute route) {
+            _connection = connection;
+            _route = route;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            try {
+                _connection.open(_route, new BasicHttpContext(), _params);
+                _connection.markReusable();
+                return Boolean.TRUE;
+            } catch (IOException ex) {
+                _connection.unmarkReusable();
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+
+/**
+ * Content negotiation for compressed responses sent through an
+ * {@link HttpTransport}: requests advertise the codings that can be decoded
+ * (gzip and deflate, and br when the Brotli decoder of
+ * {@code org.brotli:dec} is on the class path) and responses in one of them
+ * are decoded as their body is read. Responses with any other coding are
+ * passed on untouched.
+ * <p>
+ * Requests on the HttpClient path use its own {@code RequestAcceptEncoding}
+ * and {@code ResponseContentEncoding} interceptors instead. Transports do
+ * not run that interceptor chain, and HttpClient has no Brotli support.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class ContentCoding {
+
+    private static final Constructor<?> BROTLI = brotliDecoder();
+    static final String ACCEPT_ENCODING = BROTLI == null ? "gzip, deflate" : "gzip, deflate, br";
+
+    private ContentCoding() {
+    }
+
+    /**
+     * @param request request to advertise the supported codings on, unless
+     * it already names its own
+     */
+    static void accept(HttpRequest request) {
+        if (!request.containsHeader("Accept-Encoding")) {
+            request.addHeader("Accept-Encoding", ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Replaces the entity of a response in a supported coding with one that
+     * decodes the body as it is read.
+     *
+     * @param response response to decode
+     * @return the response
+     */
+    static HttpResponse decode(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity.getContentEncoding() == null) {
+            return response;
+        }
+        String coding = entity.getContentEncoding().getValue().trim().toLowerCase(Locale.ROOT);
+        if (!isSupported(coding)) {
+            return response;
+        }
+        response.setEntity(new DecompressingEntity(entity, coding));
+        response.removeHeaders("Content-Length");
+        response.removeHeaders("Content-Encoding");
+        response.removeHeaders("Content-MD5");
+        return response;
+    }
+
+    static boolean isSupported(String coding) {
+        return "gzip".equals(coding) || "x-gzip".equals(coding) || "deflate".equals(coding)
+                || ("br".equals(coding) && BROTLI != null);
+    }
+
+    /**
+     * @param coding supported content coding (lower case)
+     * @param content encoded stream
+     * @return stream of the decoded content
+     * @throws IOException if the stream could not be opened
+     */
+    static InputStream decoder(String coding, InputStream content) throws IOException {
+        if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+            return new GZIPInputStream(content, ResponseBodyReader.BUFFER_SIZE);
+        }
+        if ("deflate".equals(coding)) {
+            return inflater(content);
+        }
+        if ("br".equals(coding) && BROTLI != null) {
+            try {
+                return (InputStream) BROTLI.newInstance(content);
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException("Brotli decoder failed", ex.getCause());
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Brotli decoder failed", ex);
+            }
+        }
+        throw new IOException("Unsupported content coding: " + coding);
+    }
+
+    /**
+     * Servers send "deflate" both as zlib (as per the specification) and as
+     * raw deflate, the zlib header tells them apart.
+     */
+    private static InputStream inflater(InputStream content) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(content, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        int count;
+        while (read < 2 && (count = pushback.read(header, read, 2 - read)) != -1) {
+            read += count;
+        }
+        pushback.unread(header, 0, read);
+        int first = header[0] & 0xFF;
+        int second = header[1] & 0xFF;
+        boolean zlib = read == 2 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib), ResponseBodyReader.BUFFER_SIZE);
+    }
+
+    private static Constructor<?> brotliDecoder() {
+        try {
+            return Class.forName("org.brotli.dec.BrotliInputStream").getConstructor(InputStream.class);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        } catch (LinkageError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param header Content-Encoding header, or null
+     * @return whether the header names a coding other than identity
+     */
+    static boolean isEncoded(Header header) {
+        return header != null && !"identity".equalsIgnoreCase(header.getValue().trim());
+    }
+}
@@ -1,4 +1,4 @@
-/* 
+/*
  * 
  * Simulity Labs Ltd.
  * 
@@ -23,39 +23,30 @@
  * 
  *
  */
-var Http = require('http');
-var Util = require('util');
+package com.simulity.server.client.http.simpleclient;
 
-var Server = function() {
-	
-	var launchTime = 0;
-	var requestCount = 0;
-	this.httpServer_ = Http.createServer(function(req, res) {
-		var responseData = 'Hello, client serving ' + requestCount + '/s.\n';
-		requestCount+=1;
-		res.write(responseData);
-		res.end();
-                console.log('Serving ' + requestCount + ' requests/s on 8081');
-	});
-	this.httpServer_.listen(8081, function() {
-		console.log("Server Listening on port: " + 8081);
-		launchTime = Date.now() / 1000;
-	});
-	
-	var lastLogged = 0;
-	
-	var perSecond = function() {
-		if(requestCount != 0) {
-			
-		}
-		setTimeout(perSecond, 1000);
-		requestCount = 0;
-	};
-	
-	setTimeout(perSecond(), 1000);
-};
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-new Server();
+/**
+ * Names the threads started by the client and marks them as daemons so that
+ * an undestroyed client does not keep the JVM alive.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+    private final String _prefix;
+    private final AtomicInteger _count = new AtomicInteger();
 
-exports.Server = Server;
+    DaemonThreadFactory(String prefix) {
+        _prefix = prefix;
+    }
 
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, _prefix + "-" + _count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single request/response exchange, from the call to execute until the
+ * response body has been read (or the exchange failed). On completion the
+ * timings are recorded into the {@link ClientMetrics} of the client, when it
+ * has any, and in quiet mode one structured line is written to the
+ * {@code com.simulity.server.client.http.simpleclient.SimulityHttpClient.exchange}
+ * logger at INFO level.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class Exchange {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulityHttpClient.class.getName() + ".exchange");
+    private final String _method;
+    private final URI _uri;
+    private final long _start = System.nanoTime();
+    private final AtomicBoolean _completed = new AtomicBoolean();
+    private final ClientMetrics _metrics;
+    private final boolean _summarise;
+    private volatile int _status = -1;
+
+    /**
+     * @param request request of the exchange
+     * @param metrics metrics to record the exchange into, or null
+     * @param summarise whether to log the summary line on completion
+     */
+    Exchange(HttpUriRequest request, ClientMetrics metrics, boolean summarise) {
+        _method = request.getMethod();
+        _uri = request.getURI();
+        _metrics = metrics;
+        _summarise = summarise;
+        if (metrics != null) {
+            metrics.started(request);
+        }
+    }
+
+    /**
+     * @param response response received for the exchange
+     * @return the response, its entity counting the body as it is read
+     */
+    HttpResponse received(HttpResponse response) {
+        _status = response.getStatusLine().getStatusCode();
+        if (_metrics != null) {
+            _metrics.received(System.nanoTime() - _start);
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            completed(0);
+        } else {
+            response.setEntity(new ExchangeEntity(entity, this));
+        }
+        return response;
+    }
+
+    /**
+     * @param bytes number of body bytes read
+     */
+    void completed(long bytes) {
+        if (!_completed.compareAndSet(false, true)) {
+            return;
+        }
+        long nanos = System.nanoTime() - _start;
+        if (_metrics != null) {
+            _metrics.completed(nanos, bytes);
+        }
+        if (_summarise && log.isInfoEnabled()) {
+            log.info("method={} uri={} status={} bytes={} latencyMs={}", new Object[]{
+                _method, _uri, _status, bytes, latencyMillis(nanos)});
+        }
+    }
+
+    /**
+     * @param ex cause of the failure
+     */
+    void failed(Exception ex) {
+        if (!_completed.compareAndSet(false, true)) {
+            return;
+        }
+        long nanos = System.nanoTime() - _start;
+        if (_metrics != null) {
+            _metrics.failed();
+        }
+        if (_summarise && log.isInfoEnabled()) {
+            log.info("method={} uri={} status={} error={} latencyMs={}", new Object[]{
+                _method, _uri, _status, ex.getClass().getName(), latencyMillis(nanos)});
+        }
+    }
+
+    private static String latencyMillis(long nanos) {
+        long micros = nanos / 1000;
+        return (micros / 1000) + "." + (micros % 1000 / 100);
+    }
+}
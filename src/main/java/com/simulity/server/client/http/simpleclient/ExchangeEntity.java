@@ -0,0 +1,144 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Counts the bytes of a response body and completes the {@link Exchange}
+ * once the body has been read to the end or its stream closed.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class ExchangeEntity extends HttpEntityWrapper {
+
+    private final Exchange _exchange;
+    private InputStream _content;
+
+    ExchangeEntity(HttpEntity wrapped, Exchange exchange) {
+        super(wrapped);
+        _exchange = exchange;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (_content == null || wrappedEntity.isRepeatable()) {
+            InputStream content = wrappedEntity.getContent();
+            if (content == null) {
+                _exchange.completed(0);
+                return null;
+            }
+            _content = new CountingInputStream(content);
+        }
+        return _content;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        InputStream content = getContent();
+        if (content == null) {
+            return;
+        }
+        try {
+            byte[] buffer = ResponseBodyReader.buffer();
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                outstream.write(buffer, 0, read);
+            }
+        } finally {
+            content.close();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void consumeContent() throws IOException {
+        if (isStreaming()) {
+            InputStream content = getContent();
+            if (content != null) {
+                content.close();
+            }
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+
+        private long _count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                _exchange.completed(_count);
+            } else {
+                _count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException ex) {
+                _exchange.failed(ex);
+                throw ex;
+            }
+            if (read == -1) {
+                _exchange.completed(_count);
+            } else {
+                _count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            _count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                _exchange.completed(_count);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The threads on which {@link SimulityHttpClient#executeAsync}, submit and
+ * invokeAll run the blocking exchanges.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public enum ExecutionMode {
+
+    /**
+     * A bounded pool of platform threads, one per pooled connection.
+     */
+    PLATFORM_THREADS {
+        @Override
+        ExecutorService newExecutor(int workers) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("simulity-http-async"));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    },
+    /**
+     * A new virtual thread per request (Java 21 and later), falling back to
+     * {@link #PLATFORM_THREADS} on older runtimes. The connection pool and
+     * the concurrency limit wait on a ReentrantLock and the body is read
+     * without monitors, so a request waiting on the pool, the limit or the
+     * socket does not pin its carrier thread; the connection pool limits how
+     * many exchanges are on the wire.
+     */
+    VIRTUAL_THREADS {
+        @Override
+        ExecutorService newExecutor(int workers) {
+            try {
+                Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                log.warn("Virtual threads are not available on Java {}, using platform threads.",
+                        System.getProperty("java.version"));
+                return PLATFORM_THREADS.newExecutor(workers);
+            }
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionMode.class);
+
+    /**
+     * @param workers number of platform threads, matching the size of the
+     * connection pool
+     * @return a new executor for this mode
+     */
+    abstract ExecutorService newExecutor(int workers);
+}
@@ -0,0 +1,107 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Sends a file with {@link FileChannel#transferTo}. The connection's stream
+ * is not a channel, so the body is still copied through a small buffer, but
+ * the heap used stays the same whatever the size of the file. The length of
+ * the file is taken when the Content-Length is first asked for and the file
+ * must not shrink while it is sent.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+
+    private final Path _path;
+    private long _length = -1;
+
+    FileChannelEntity(Path path, ContentType contentType) {
+        _path = path;
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    Path getPath() {
+        return _path;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public synchronized long getContentLength() {
+        if (_length < 0) {
+            _length = _path.toFile().length();
+        }
+        return _length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return Files.newInputStream(_path);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        long length = getContentLength();
+        FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ);
+        try {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < length) {
+                long transferred = channel.transferTo(position, length - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("File shrank while it was sent: " + _path + " (" + position + " of " + length + " bytes)");
+                }
+                position += transferred;
+            }
+        } finally {
+            channel.close();
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Compresses a request body with gzip while it is written, the body is sent
+ * chunked with {@code Content-Encoding: gzip}.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class GzipCompressingEntity extends HttpEntityWrapper {
+
+    private static final Header GZIP = new BasicHeader("Content-Encoding", "gzip");
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    GzipCompressingEntity(HttpEntity wrapped) {
+        super(wrapped);
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return GZIP;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return true;
+    }
+
+    /**
+     * @return the compressed body, for transports that need the content
+     * rather than writing it; the body is compressed as the stream is read,
+     * so a file is not held in memory
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        InputStream body = new DeflaterInputStream(new CheckedInputStream(wrappedEntity.getContent(), crc),
+                deflater, ResponseBodyReader.BUFFER_SIZE);
+        // Only read once the body is exhausted, when the checksum is complete.
+        InputStream trailer = new InputStream() {
+            private InputStream _trailer;
+
+            @Override
+            public int read() throws IOException {
+                return trailer().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return trailer().read(b, off, len);
+            }
+
+            private InputStream trailer() {
+                if (_trailer == null) {
+                    long value = crc.getValue();
+                    long size = deflater.getBytesRead();
+                    deflater.end();
+                    byte[] trailer = new byte[8];
+                    for (int i = 0; i < 4; i++) {
+                        trailer[i] = (byte) (value >>> (i * 8));
+                        trailer[i + 4] = (byte) (size >>> (i * 8));
+                    }
+                    _trailer = new ByteArrayInputStream(trailer);
+                }
+                return _trailer;
+            }
+        };
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(HEADER), body, trailer)));
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(outstream, ResponseBodyReader.BUFFER_SIZE);
+        wrappedEntity.writeTo(gzip);
+        gzip.finish();
+        gzip.flush();
+    }
+}
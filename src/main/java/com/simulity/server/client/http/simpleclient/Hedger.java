@@ -0,0 +1,291 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends hedges for the requests of a client, see
+ * {@link HedgingConfiguration}. The first copy of a request is sent on the
+ * calling thread and the hedge, if the delay passes first and the budget
+ * allows, on the asynchronous executor of the client. Whichever response
+ * arrives first is returned and the other copy is aborted. Both copies are
+ * sent as requests of their own, so the request of the caller is never
+ * aborted by the race; aborting it aborts both copies.
+ *
+ * The delay is taken from a window of times to response, those of the
+ * winning copies measured from the first send, that is replaced
+ * once it spans a second and holds {@value #MIN_SAMPLES} responses, so that
+ * it follows the backend without computing a percentile per request.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class Hedger {
+
+    private static final Logger log = LoggerFactory.getLogger(Hedger.class);
+    static final int MIN_SAMPLES = 20;
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private final HedgingConfiguration _configuration;
+    private final TokenBudget _budget;
+    private final LongAdder _hedges = new LongAdder();
+    private volatile LatencyHistogram _window = new LatencyHistogram();
+    private volatile long _windowStart = System.nanoTime();
+    private volatile long _delay;
+
+    Hedger(HedgingConfiguration configuration) {
+        _configuration = configuration.copy();
+        _budget = new TokenBudget(_configuration.getBudgetRatio(), _configuration.getBudgetBurst());
+        _delay = _configuration.getMaxDelay();
+    }
+
+    /**
+     * @param request request to check
+     * @return whether the method of the request is hedged and it has no body
+     */
+    boolean isHedgeable(HttpUriRequest request) {
+        return !(request instanceof HttpEntityEnclosingRequest) && _configuration.getMethods().contains(request.getMethod());
+    }
+
+    /**
+     * @return number of hedges sent
+     */
+    long getHedges() {
+        return _hedges.sum();
+    }
+
+    /**
+     * @return current hedge delay in nanoseconds
+     */
+    long getDelay() {
+        return _delay;
+    }
+
+    /**
+     * @param client client sending both copies
+     * @param request request to send
+     * @param executor executor the hedge is sent on
+     * @return the first response received
+     * @throws IOException if both copies failed, or the first failed before
+     * a hedge was sent
+     */
+    HttpResponse execute(SimulityHttpClient client, HttpUriRequest request, Executor executor) throws IOException {
+        _budget.deposit();
+        final Race race = new Race(client, request, executor);
+        if (request instanceof AbortableHttpRequest) {
+            ((AbortableHttpRequest) request).setReleaseTrigger(new ConnectionReleaseTrigger() {
+                @Override
+                public void releaseConnection() {
+                }
+
+                @Override
+                public void abortConnection() {
+                    race._primary.abort();
+                    race._hedge.abort();
+                }
+            });
+        }
+        ScheduledFuture<?> timer = IdleConnectionEvictor.scheduler().schedule(race, _delay, TimeUnit.NANOSECONDS);
+        HttpResponse response;
+        try {
+            response = client.exchange(race._primary);
+        } catch (IOException ex) {
+            return race.lost(timer, ex);
+        } catch (RuntimeException ex) {
+            timer.cancel(false);
+            race._hedge.abort();
+            throw ex;
+        }
+        if (race._winner.complete(response)) {
+            record(System.nanoTime() - race._start);
+            timer.cancel(false);
+            race._hedge.abort();
+            return response;
+        }
+        discard(response);
+        return race._winner.join();
+    }
+
+    void record(long nanos) {
+        LatencyHistogram window = _window;
+        window.record(nanos);
+        long now = System.nanoTime();
+        if (now - _windowStart >= WINDOW && window.count() >= MIN_SAMPLES) {
+            synchronized (this) {
+                if (_window != window) {
+                    return;
+                }
+                _window = new LatencyHistogram();
+                _windowStart = now;
+            }
+            long delay = window.percentile(_configuration.getPercentile());
+            _delay = Math.min(Math.max(delay, _configuration.getMinDelay()), _configuration.getMaxDelay());
+            log.debug("Hedge delay: {}us", TimeUnit.NANOSECONDS.toMicros(_delay));
+        }
+    }
+
+    /**
+     * @return a copy of the request that can be sent and aborted on its own
+     */
+    static HttpUriRequest copyOf(final HttpUriRequest request) {
+        HttpRequestBase copy = new HttpRequestBase() {
+            @Override
+            public String getMethod() {
+                return request.getMethod();
+            }
+        };
+        copy.setURI(request.getURI());
+        copy.setHeaders(request.getAllHeaders());
+        copy.setParams(request.getParams());
+        return copy;
+    }
+
+    /**
+     * Releases the connection of a response that lost the race.
+     */
+    private static void discard(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+        try {
+            InputStream content = entity.getContent();
+            if (content != null) {
+                content.close();
+            }
+        } catch (IOException ex) {
+            log.debug("Discarding the losing response failed", ex);
+        }
+    }
+
+    /**
+     * The two copies of a request, run by the scheduler once the delay has
+     * passed.
+     */
+    private final class Race implements Runnable {
+
+        private final SimulityHttpClient _client;
+        private final HttpUriRequest _request;
+        private final HttpUriRequest _primary;
+        private final HttpUriRequest _hedge;
+        private final long _start = System.nanoTime();
+        private final Executor _executor;
+        private final CompletableFuture<HttpResponse> _winner = new CompletableFuture<HttpResponse>();
+        /**
+         * Response of the hedge, null when no hedge was sent.
+         */
+        private final CompletableFuture<HttpResponse> _hedged = new CompletableFuture<HttpResponse>();
+
+        private Race(SimulityHttpClient client, HttpUriRequest request, Executor executor) {
+            _client = client;
+            _request = request;
+            _primary = copyOf(request);
+            _hedge = copyOf(request);
+            _executor = executor;
+        }
+
+        @Override
+        public void run() {
+            if (_winner.isDone() || !_budget.withdraw()) {
+                _hedged.complete(null);
+                return;
+            }
+            _hedges.increment();
+            log.debug("Hedging request for {}", _request.getURI());
+            try {
+                _executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        hedge();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                _hedged.complete(null);
+            }
+        }
+
+        private void hedge() {
+            if (_winner.isDone()) {
+                return;
+            }
+            try {
+                HttpResponse response = _client.exchange(_hedge);
+                if (_winner.complete(response)) {
+                    record(System.nanoTime() - _start);
+                    _primary.abort();
+                } else {
+                    discard(response);
+                }
+                _hedged.complete(response);
+            } catch (IOException ex) {
+                _hedged.completeExceptionally(ex);
+            } catch (RuntimeException ex) {
+                _hedged.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * @return the response of the hedge, the first copy having failed
+         * (or been aborted because the hedge won)
+         */
+        private HttpResponse lost(ScheduledFuture<?> timer, IOException failure) throws IOException {
+            if (timer.cancel(false)) {
+                throw failure;
+            }
+            try {
+                HttpResponse response = _hedged.get();
+                if (response == null) {
+                    throw failure;
+                }
+                return response;
+            } catch (InterruptedException ex) {
+                _hedge.abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the hedge of " + _request.getURI());
+            } catch (ExecutionException ex) {
+                failure.addSuppressed(ex.getCause());
+                throw failure;
+            }
+        }
+    }
+}
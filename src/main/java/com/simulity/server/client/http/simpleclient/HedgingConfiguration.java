@@ -0,0 +1,176 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of request hedging, see
+ * {@link SimulityHttpClient#hedging(HedgingConfiguration)}. A request whose
+ * response has not arrived within the hedge delay is sent a second time and
+ * the first response wins. The delay is the configured percentile of the
+ * recent times to response, kept within the delay bounds; until enough
+ * responses have been seen it is the upper bound.
+ *
+ * Hedges are paid for from a budget: every hedgeable request adds the budget
+ * ratio to it (up to the burst) and every hedge takes one, so hedges never
+ * add more than the ratio to the load on the backends.
+ *
+ * Only requests without a body whose method is in the hedged methods are
+ * hedged; those are GET and HEAD unless configured otherwise.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class HedgingConfiguration {
+
+    private double _percentile = 0.95;
+    private long _minDelay = TimeUnit.MILLISECONDS.toNanos(5);
+    private long _maxDelay = TimeUnit.SECONDS.toNanos(1);
+    private double _budgetRatio = 0.05;
+    private int _budgetBurst = 10;
+    private Set<String> _methods = new LinkedHashSet<String>(Arrays.asList("GET", "HEAD"));
+
+    /**
+     * @param percentile percentile of the times to response after which a
+     * hedge is sent, between zero and one
+     * @return HedgingConfiguration with the percentile applied.
+     */
+    public HedgingConfiguration percentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+        }
+        _percentile = percentile;
+        return this;
+    }
+
+    /**
+     * @param minDelay shortest hedge delay
+     * @param maxDelay longest hedge delay, used until enough responses have
+     * been seen
+     * @param unit unit of the delays
+     * @return HedgingConfiguration with the delay bounds applied.
+     */
+    public HedgingConfiguration delay(long minDelay, long maxDelay, TimeUnit unit) {
+        if (minDelay < 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("Invalid delay bounds: " + minDelay + ".." + maxDelay + " " + unit);
+        }
+        _minDelay = unit.toNanos(minDelay);
+        _maxDelay = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * @param ratio hedges allowed per hedgeable request, between zero and one
+     * @param burst hedges that can be saved up
+     * @return HedgingConfiguration with the budget applied.
+     */
+    public HedgingConfiguration budget(double ratio, int burst) {
+        if (ratio < 0 || ratio > 1 || burst < 1) {
+            throw new IllegalArgumentException("Invalid budget: " + ratio + " with a burst of " + burst);
+        }
+        _budgetRatio = ratio;
+        _budgetBurst = burst;
+        return this;
+    }
+
+    /**
+     * @param methods methods of the requests to hedge, which must be
+     * idempotent; a hedged DELETE may be answered by the second copy after the
+     * first has already removed the resource
+     * @return HedgingConfiguration with the methods applied.
+     */
+    public HedgingConfiguration methods(String... methods) {
+        Set<String> set = new LinkedHashSet<String>();
+        for (String method : methods) {
+            String name = method.toUpperCase(Locale.ROOT);
+            if ("POST".equals(name) || "PATCH".equals(name)) {
+                throw new IllegalArgumentException("Method is not idempotent: " + method);
+            }
+            set.add(name);
+        }
+        _methods = set;
+        return this;
+    }
+
+    public double getPercentile() {
+        return _percentile;
+    }
+
+    /**
+     * @return shortest hedge delay in nanoseconds
+     */
+    public long getMinDelay() {
+        return _minDelay;
+    }
+
+    /**
+     * @return longest hedge delay in nanoseconds
+     */
+    public long getMaxDelay() {
+        return _maxDelay;
+    }
+
+    public double getBudgetRatio() {
+        return _budgetRatio;
+    }
+
+    public int getBudgetBurst() {
+        return _budgetBurst;
+    }
+
+    public Set<String> getMethods() {
+        return Collections.unmodifiableSet(_methods);
+    }
+
+    /**
+     * @return an independent copy of this configuration
+     */
+    public HedgingConfiguration copy() {
+        HedgingConfiguration copy = new HedgingConfiguration();
+        copy._percentile = _percentile;
+        copy._minDelay = _minDelay;
+        copy._maxDelay = _maxDelay;
+        copy._budgetRatio = _budgetRatio;
+        copy._budgetBurst = _budgetBurst;
+        copy._methods = new LinkedHashSet<String>(_methods);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingConfiguration{percentile=" + _percentile
+                + ", minDelay=" + TimeUnit.NANOSECONDS.toMillis(_minDelay) + "ms"
+                + ", maxDelay=" + TimeUnit.NANOSECONDS.toMillis(_maxDelay) + "ms"
+                + ", budgetRatio=" + _budgetRatio
+                + ", budgetBurst=" + _budgetBurst
+                + ", methods=" + _methods + "}";
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * {@link Protocol#HTTP_2} transport on the HTTP client of the JDK, which
+ * keeps one multiplexed connection per host. Requests are converted from and
+ * responses to their Apache HttpClient counterparts; the response body is
+ * streamed.
+ * <p>
+ * Aborting the request closes the body of its response, which resets the
+ * stream. Cancelling the future of an exchange does not cancel the exchange
+ * itself before JDK 16, so a request aborted before its response headers
+ * arrive is still sent and its stream is reset once they do. The JDK client
+ * has no close before JDK 21: shutdown aborts the outstanding exchanges and
+ * stops the executor, and the connections are closed once the client is
+ * collected.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class Http2Transport implements HttpTransport {
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+    private static final ProtocolVersion HTTP_1_1 = new ProtocolVersion("HTTP", 1, 1);
+    // Earlier, cancelling only drops the response, and with it the way to reset the stream.
+    private static final boolean CANCELLABLE = Runtime.version().feature() >= 16;
+    private final ExecutorService _executor;
+    private final HttpClient _client;
+    private final Duration _requestTimeout;
+    private final Set<StreamReleaseTrigger> _exchanges = ConcurrentHashMap.newKeySet();
+
+    Http2Transport(HttpParams params, TlsConfiguration tls) {
+        _executor = Executors.newCachedThreadPool(new DaemonThreadFactory("simulity-http2"));
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .sslContext(tls.getSSLContext())
+                .sslParameters(tls.getSSLParameters())
+                .executor(_executor);
+        int connectTimeout = HttpConnectionParams.getConnectionTimeout(params);
+        if (connectTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        int soTimeout = HttpConnectionParams.getSoTimeout(params);
+        _requestTimeout = soTimeout > 0 ? Duration.ofMillis(soTimeout) : null;
+        _client = builder.build();
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        StreamReleaseTrigger exchange = new StreamReleaseTrigger(_client.sendAsync(
+                toHttpRequest(request), java.net.http.HttpResponse.BodyHandlers.ofInputStream()));
+        _exchanges.add(exchange);
+        if (request instanceof AbortableHttpRequest) {
+            ((AbortableHttpRequest) request).setReleaseTrigger(exchange);
+        }
+        try {
+            return toHttpResponse(exchange._response.get(), exchange);
+        } catch (InterruptedException ex) {
+            exchange.abortConnection();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        } catch (CancellationException ex) {
+            throw new InterruptedIOException("Request aborted");
+        } catch (ExecutionException ex) {
+            _exchanges.remove(exchange);
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof CancellationException) {
+                throw new InterruptedIOException("Request aborted");
+            }
+            throw new IOException("HTTP/2 exchange failed", cause);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (StreamReleaseTrigger exchange : _exchanges) {
+            exchange.abortConnection();
+        }
+        _executor.shutdownNow();
+    }
+
+    private HttpRequest toHttpRequest(HttpUriRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI());
+        if (_requestTimeout != null) {
+            builder.timeout(_requestTimeout);
+        }
+        for (org.apache.http.Header header : request.getAllHeaders()) {
+            if (!isRestricted(header.getName())) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                if (entity.getContentType() != null && request.getFirstHeader("Content-Type") == null) {
+                    builder.header("Content-Type", entity.getContentType().getValue());
+                }
+                if (entity.getContentEncoding() != null && request.getFirstHeader("Content-Encoding") == null) {
+                    builder.header("Content-Encoding", entity.getContentEncoding().getValue());
+                }
+                body = publisher(entity);
+            }
+        }
+        return builder.method(request.getMethod(), body).build();
+    }
+
+    /**
+     * Files, streams and bodies of unknown length (compressed ones) are
+     * published as they are sent; other bodies are small enough to copy.
+     */
+    private static HttpRequest.BodyPublisher publisher(final HttpEntity entity) throws IOException {
+        if (entity instanceof FileChannelEntity) {
+            return HttpRequest.BodyPublishers.ofFile(((FileChannelEntity) entity).getPath());
+        }
+        if (!entity.isStreaming() && entity.getContentLength() >= 0) {
+            return HttpRequest.BodyPublishers.ofByteArray(EntityUtils.toByteArray(entity));
+        }
+        final InputStream content = entity.getContent();
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+            @Override
+            public InputStream get() {
+                return content;
+            }
+        });
+        long length = entity.getContentLength();
+        return length <= 0 ? stream : HttpRequest.BodyPublishers.fromPublisher(stream, length);
+    }
+
+    private HttpResponse toHttpResponse(java.net.http.HttpResponse<InputStream> response,
+            final StreamReleaseTrigger exchange) {
+        ProtocolVersion version = response.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HTTP_1_1;
+        int status = response.statusCode();
+        BasicHttpResponse converted = new BasicHttpResponse(new BasicStatusLine(version, status,
+                EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH)));
+        HttpHeaders headers = response.headers();
+        for (Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+            if (header.getKey().startsWith(":")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                converted.addHeader(header.getKey(), value);
+            }
+        }
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new FilterInputStream(response.body()) {
+            @Override
+            public void close() throws IOException {
+                _exchanges.remove(exchange);
+                super.close();
+            }
+        });
+        entity.setContentLength(headers.firstValueAsLong("Content-Length").orElse(-1));
+        entity.setContentType(converted.getFirstHeader("Content-Type"));
+        entity.setContentEncoding(converted.getFirstHeader("Content-Encoding"));
+        converted.setEntity(entity);
+        return converted;
+    }
+
+    /**
+     * @param name header name
+     * @return whether the header is set by the JDK client itself
+     */
+    private static boolean isRestricted(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return "connection".equals(lower) || "content-length".equals(lower) || "expect".equals(lower)
+                || "host".equals(lower) || "upgrade".equals(lower) || "keep-alive".equals(lower)
+                || "transfer-encoding".equals(lower);
+    }
+
+    /**
+     * Resets the stream of an aborted request by closing the body of its
+     * response, as soon as there is one.
+     */
+    private class StreamReleaseTrigger implements ConnectionReleaseTrigger {
+
+        private final CompletableFuture<java.net.http.HttpResponse<InputStream>> _exchange;
+        /**
+         * What the caller waits on, cancelled to wake it on abort.
+         */
+        private final CompletableFuture<java.net.http.HttpResponse<InputStream>> _response;
+
+        StreamReleaseTrigger(CompletableFuture<java.net.http.HttpResponse<InputStream>> exchange) {
+            _exchange = exchange;
+            _response = exchange.copy();
+        }
+
+        @Override
+        public void releaseConnection() {
+            abortConnection();
+        }
+
+        @Override
+        public void abortConnection() {
+            _exchanges.remove(this);
+            _response.cancel(true);
+            _exchange.thenAccept(new Consumer<java.net.http.HttpResponse<InputStream>>() {
+                @Override
+                public void accept(java.net.http.HttpResponse<InputStream> response) {
+                    try {
+                        response.body().close();
+                    } catch (IOException ex) {
+                        // Reset either way.
+                    }
+                }
+            });
+            if (CANCELLABLE) {
+                _exchange.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Carries the requests of a {@link SimulityHttpClient} in place of its Apache
+ * HttpClient, see {@link SimulityHttpClient.Builder#transport(HttpTransport)}.
+ * The responses follow the contract of
+ * {@link SimulityHttpClient#execute(HttpUriRequest)}: the entity is streamed
+ * and releases its resources once read to the end or closed.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public interface HttpTransport {
+
+    /**
+     * @param request request (HTTP) that should be pre-constructed
+     * @return the response
+     * @throws IOException if the exchange failed
+     */
+    HttpResponse execute(HttpUriRequest request) throws IOException;
+
+    /**
+     * Releases the connections and threads of the transport.
+     */
+    void shutdown();
+}
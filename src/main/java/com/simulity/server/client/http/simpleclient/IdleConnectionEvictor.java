@@ -0,0 +1,72 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * Closes expired and idle connections of the shared pools in the background,
+ * so a keep-alive connection the server has dropped is not handed out again.
+ * One daemon thread serves every pool.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class IdleConnectionEvictor {
+
+    private static final ScheduledExecutorService SCHEDULER
+            = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("simulity-http-evictor"));
+
+    private IdleConnectionEvictor() {
+    }
+
+    /**
+     * @param connectionManager pool to evict from
+     * @param idleTimeout idle time, in milliseconds, after which a connection
+     * is closed; the pool is checked at half this interval
+     * @return handle to cancel the eviction with
+     */
+    static ScheduledFuture<?> schedule(final ClientConnectionManager connectionManager, final long idleTimeout) {
+        long interval = Math.max(1, idleTimeout / 2);
+        return SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the scheduler shared by the background pool tasks
+     */
+    static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+}
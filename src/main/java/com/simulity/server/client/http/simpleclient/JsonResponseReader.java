@@ -0,0 +1,171 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import org.apache.http.HttpEntity;
+
+/**
+ * Parses JSON response entities straight from the content stream, without
+ * building the body as a string first. Bodies are read as UTF-8, UTF-16 or
+ * UTF-32 (detected by Jackson) unless the Content-Type declares another
+ * charset. Large arrays can be read one element at a time with
+ * {@link #streamArray}, so only a single element is held in memory.
+ *
+ * Every read closes the entity content stream which releases the connection
+ * back to the connection manager.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public final class JsonResponseReader {
+
+    /**
+     * Mapper used when the client is not given one: Jackson defaults, except
+     * that unknown properties are ignored so that services can add fields.
+     */
+    static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Receives the elements of a JSON array as they are parsed.
+     *
+     * @param <T> type of the elements
+     */
+    public interface ElementHandler<T> {
+
+        /**
+         * @param element the next element of the array
+         * @throws IOException to stop reading
+         */
+        void onElement(T element) throws IOException;
+    }
+
+    private JsonResponseReader() {
+    }
+
+    /**
+     * @param entity response entity
+     * @param mapper mapper to bind with
+     * @param type type to bind the document to
+     * @param <T> type of the result
+     * @return the document, or null when the body is empty
+     * @throws IOException if the body could not be read or bound
+     */
+    public static <T> T read(HttpEntity entity, ObjectMapper mapper, Class<T> type) throws IOException {
+        return read(entity, mapper, mapper.constructType(type));
+    }
+
+    /**
+     * @param entity response entity
+     * @param mapper mapper to bind with
+     * @param type type to bind the document to, for generic types
+     * @param <T> type of the result
+     * @return the document, or null when the body is empty
+     * @throws IOException if the body could not be read or bound
+     */
+    public static <T> T read(HttpEntity entity, ObjectMapper mapper, TypeReference<T> type) throws IOException {
+        return read(entity, mapper, mapper.getTypeFactory().constructType(type));
+    }
+
+    private static <T> T read(HttpEntity entity, ObjectMapper mapper, JavaType type) throws IOException {
+        JsonParser parser = parser(entity, mapper);
+        try {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return mapper.readerFor(type).readValue(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Binds the elements of a top level JSON array one at a time.
+     *
+     * @param entity response entity
+     * @param mapper mapper to bind with
+     * @param elementType type to bind each element to
+     * @param handler receiver of the elements
+     * @param <T> type of the elements
+     * @return number of elements read
+     * @throws IOException if the body is not an array, could not be read or
+     * bound, or the handler failed
+     */
+    public static <T> long streamArray(HttpEntity entity, ObjectMapper mapper, Class<T> elementType,
+            ElementHandler<? super T> handler) throws IOException {
+        JsonParser parser = parser(entity, mapper);
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return 0;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array but found " + token);
+            }
+            ObjectReader reader = mapper.readerFor(elementType);
+            long count = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                T element = reader.readValue(parser);
+                handler.onElement(element);
+                count++;
+            }
+            return count;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Opens a token parser on the body for callers that walk the document
+     * themselves. The parser must be closed, which releases the connection.
+     *
+     * @param entity response entity
+     * @param mapper mapper whose factory and codec the parser uses
+     * @return parser positioned before the first token
+     * @throws IOException if the body could not be opened
+     */
+    public static JsonParser parser(HttpEntity entity, ObjectMapper mapper) throws IOException {
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return mapper.getFactory().createParser(new byte[0]);
+        }
+        Charset charset = ResponseBodyReader.charsetOf(entity, null);
+        if (charset == null || charset.name().startsWith("UTF-")) {
+            return mapper.getFactory().createParser(content);
+        }
+        return mapper.getFactory().createParser(new InputStreamReader(content, charset));
+    }
+}
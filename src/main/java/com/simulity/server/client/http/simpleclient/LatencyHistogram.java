@@ -0,0 +1,209 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in the style of HdrHistogram: values are
+ * counted in log-linear buckets (16 per power of two), so every recorded
+ * value is reported within 1/16th (about 6%) of its actual value from a
+ * nanosecond up to several years, in a fixed 8KB of counters.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * @param nanos duration to record, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        _counts.incrementAndGet(indexOf(value));
+        _count.increment();
+        _sum.add(value);
+        long max = _max.get();
+        while (value > max && !_max.compareAndSet(max, value)) {
+            max = _max.get();
+        }
+    }
+
+    /**
+     * @return the recorded durations, in microseconds, at this point in time
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        long max = _max.get();
+        double mean = total == 0 ? 0 : (double) _sum.sum() / total;
+        return new Snapshot(total, micros(mean),
+                micros(percentile(counts, total, 0.50, max)),
+                micros(percentile(counts, total, 0.90, max)),
+                micros(percentile(counts, total, 0.99, max)),
+                micros(percentile(counts, total, 0.999, max)),
+                micros(max));
+    }
+
+    /**
+     * @return number of recorded durations
+     */
+    long count() {
+        return _count.sum();
+    }
+
+    /**
+     * @param quantile quantile between zero and one
+     * @return the recorded duration at the quantile, in nanoseconds
+     */
+    long percentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        return percentile(counts, total, quantile, _max.get());
+    }
+
+    /**
+     * @param nanos duration in nanoseconds
+     * @return the bucket of the duration
+     */
+    static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int mantissa = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @param index bucket
+     * @return the highest duration counted in the bucket
+     */
+    static long highestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int mantissa = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + mantissa + 1) << shift) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static double micros(double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    /**
+     * Durations recorded by a histogram, in microseconds.
+     */
+    public static class Snapshot {
+
+        private final long _count;
+        private final double _mean;
+        private final double _p50;
+        private final double _p90;
+        private final double _p99;
+        private final double _p999;
+        private final double _max;
+
+        Snapshot(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+            _count = count;
+            _mean = mean;
+            _p50 = p50;
+            _p90 = p90;
+            _p99 = p99;
+            _p999 = p999;
+            _max = max;
+        }
+
+        public long getCount() {
+            return _count;
+        }
+
+        public double getMeanMicros() {
+            return _mean;
+        }
+
+        public double getP50Micros() {
+            return _p50;
+        }
+
+        public double getP90Micros() {
+            return _p90;
+        }
+
+        public double getP99Micros() {
+            return _p99;
+        }
+
+        public double getP999Micros() {
+            return _p999;
+        }
+
+        public double getMaxMicros() {
+            return _max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + _count + " mean=" + _mean + "us p50=" + _p50 + "us p90=" + _p90
+                    + "us p99=" + _p99 + "us p999=" + _p999 + "us max=" + _max + "us";
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Spreads the requests to logical services over their endpoints with the
+ * power of two choices: two endpoints are picked at random and the one with
+ * the lower cost (latency times requests in flight) is used. This keeps the
+ * load even without the herding of always taking the single best endpoint,
+ * and costs two reads per request.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class LoadBalancer {
+
+    /**
+     * Context attribute holding the endpoint a request is sent to.
+     */
+    static final String ENDPOINT = "simulity.service.endpoint";
+    /**
+     * Names the endpoint in the Host header; the Apache HttpClient takes the
+     * Host from the request URL, which holds the service name.
+     */
+    static final HttpRequestInterceptor ENDPOINT_HOST = new HttpRequestInterceptor() {
+        @Override
+        public void process(HttpRequest request, HttpContext context) {
+            HttpHost endpoint = (HttpHost) context.getAttribute(ENDPOINT);
+            if (endpoint != null) {
+                request.setHeader(HTTP.TARGET_HOST, endpoint.toHostString());
+            }
+        }
+    };
+    private final ConcurrentMap<String, ServiceEndpoint[]> _services = new ConcurrentHashMap<String, ServiceEndpoint[]>();
+
+    /**
+     * Sets the endpoints of a service, keeping the figures of the endpoints
+     * it already had.
+     *
+     * @param name service name, as used for the host of request URLs
+     * @param hosts endpoints of the service
+     */
+    synchronized void register(String name, List<HttpHost> hosts) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("Service needs at least one endpoint: " + name);
+        }
+        Map<HttpHost, ServiceEndpoint> existing = new HashMap<HttpHost, ServiceEndpoint>();
+        ServiceEndpoint[] previous = _services.get(key(name));
+        if (previous != null) {
+            for (ServiceEndpoint endpoint : previous) {
+                existing.put(endpoint.getHost(), endpoint);
+            }
+        }
+        ServiceEndpoint[] endpoints = new ServiceEndpoint[hosts.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            ServiceEndpoint endpoint = existing.get(hosts.get(i));
+            endpoints[i] = endpoint != null ? endpoint : new ServiceEndpoint(hosts.get(i));
+        }
+        _services.put(key(name), endpoints);
+    }
+
+    /**
+     * @param name service name
+     * @return the endpoints of the service, empty when it is not registered
+     */
+    List<ServiceEndpoint> endpoints(String name) {
+        ServiceEndpoint[] endpoints = name != null ? _services.get(key(name)) : null;
+        if (endpoints == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<ServiceEndpoint>(Arrays.asList(endpoints)));
+    }
+
+    /**
+     * @param name host of a request URL
+     * @return the endpoint to send the request to, or null when the host is
+     * not a service name
+     */
+    ServiceEndpoint choose(String name) {
+        return choose(name, System.nanoTime());
+    }
+
+    /**
+     * @param name host of a request URL
+     * @param now {@link System#nanoTime()} the endpoint figures are decayed to
+     * @return the endpoint to send the request to, or null when the host is
+     * not a service name
+     */
+    ServiceEndpoint choose(String name, long now) {
+        if (name == null) {
+            return null;
+        }
+        ServiceEndpoint[] endpoints = _services.get(key(name));
+        if (endpoints == null) {
+            return null;
+        }
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = random.nextInt(endpoints.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceEndpoint a = endpoints[first];
+        ServiceEndpoint b = endpoints[second];
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
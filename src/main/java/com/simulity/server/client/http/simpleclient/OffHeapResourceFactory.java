@@ -0,0 +1,149 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+
+/**
+ * Holds cached response bodies in direct buffers, outside of the Java heap,
+ * so that a large cache adds no work for the garbage collector. The buffer
+ * grows by doubling while the body is read and is trimmed to the body once it
+ * is complete, so that the memory held matches the length counted by the
+ * cache. The memory of a body is freed once its buffer is no longer
+ * referenced.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class OffHeapResourceFactory implements ResourceFactory {
+
+    @Override
+    public Resource generate(String requestId, InputStream instream, InputLimit limit) throws IOException {
+        byte[] buffer = ResponseBodyReader.buffer();
+        ByteBuffer body = ByteBuffer.allocateDirect(buffer.length);
+        long max = limit == null ? Long.MAX_VALUE : limit.getValue();
+        int read;
+        while ((read = instream.read(buffer)) != -1) {
+            if (body.remaining() < read) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(body.capacity() * 2, body.position() + read));
+                body.flip();
+                larger.put(body);
+                body = larger;
+            }
+            body.put(buffer, 0, read);
+            if (body.position() > max) {
+                limit.reached();
+                break;
+            }
+        }
+        body.flip();
+        if (body.limit() < body.capacity()) {
+            ByteBuffer trimmed = ByteBuffer.allocateDirect(body.limit());
+            trimmed.put(body);
+            trimmed.flip();
+            body = trimmed;
+        }
+        return new OffHeapResource(body.asReadOnlyBuffer());
+    }
+
+    @Override
+    public Resource copy(String requestId, Resource resource) throws IOException {
+        if (resource instanceof OffHeapResource) {
+            // Bodies are never modified, the copy can share the buffer.
+            return resource;
+        }
+        InputStream content = resource.getInputStream();
+        try {
+            return generate(requestId, content, null);
+        } finally {
+            content.close();
+        }
+    }
+
+    /**
+     * A body held in a direct buffer. It is only kept in memory, so it is
+     * not serialised.
+     */
+    static class OffHeapResource implements Resource {
+
+        private static final long serialVersionUID = 1L;
+        private final transient ByteBuffer _body;
+
+        OffHeapResource(ByteBuffer body) {
+            _body = body;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            final ByteBuffer body = _body.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return body.hasRemaining() ? body.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!body.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, body.remaining());
+                    body.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return body.remaining();
+                }
+            };
+        }
+
+        @Override
+        public long length() {
+            return _body.remaining();
+        }
+
+        /**
+         * @return bytes of direct memory held by the body
+         */
+        int capacity() {
+            return _body.capacity();
+        }
+
+        @Override
+        public void dispose() {
+            // Freed with the buffer.
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.params.DefaultedHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the requests of one {@link SimulityHttpClient#executePipelined} call.
+ * The requests to each host are written back to back on a single keep-alive
+ * connection leased from the pool, up to the pipeline depth ahead of the
+ * responses, which are read (and buffered) in order. When the server closes
+ * the connection, or the connection fails, the requests that have not been
+ * answered yet are sent again through {@link SimulityHttpClient#execute}; only
+ * idempotent requests without a body are accepted, so this is always safe.
+ * Pipelined exchanges skip the per-request handling of execute (limits,
+ * metrics, retries, cache), see {@link SimulityHttpClient#executePipelined}.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class Pipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(Pipeline.class);
+    private static final HttpProcessor PROCESSOR = new ImmutableHttpProcessor(new HttpRequestInterceptor[]{
+        new RequestContent(), new RequestTargetHost(), new RequestConnControl(), new RequestUserAgent()});
+    private static final DefaultConnectionReuseStrategy REUSE_STRATEGY = new DefaultConnectionReuseStrategy();
+    private static final DefaultConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = new DefaultConnectionKeepAliveStrategy();
+    private final SimulityHttpClient _client;
+    private final ClientConnectionManager _connectionManager;
+    private final HttpParams _params;
+    private final int _depth;
+
+    Pipeline(SimulityHttpClient client, ClientConnectionManager connectionManager, HttpParams params, int depth) {
+        _client = client;
+        _connectionManager = connectionManager;
+        _params = params;
+        _depth = depth;
+    }
+
+    /**
+     * @param request request to check
+     * @return whether the request can be pipelined
+     */
+    static boolean isPipelinable(HttpUriRequest request) {
+        String method = request.getMethod();
+        return !(request instanceof HttpEntityEnclosingRequest)
+                && ("GET".equals(method) || "HEAD".equals(method) || "DELETE".equals(method)
+                || "OPTIONS".equals(method));
+    }
+
+    /**
+     * @param requests idempotent requests without a body
+     * @return the results in the order of the requests
+     * @throws InterruptedException if interrupted while waiting for a
+     * connection
+     */
+    List<BatchResult> run(List<? extends HttpUriRequest> requests) throws InterruptedException {
+        BatchResult[] results = new BatchResult[requests.size()];
+        Map<HttpHost, List<Integer>> hosts = new LinkedHashMap<HttpHost, List<Integer>>();
+        for (int i = 0; i < requests.size(); i++) {
+            HttpHost host = URIUtils.extractHost(requests.get(i).getURI());
+            List<Integer> indexes = hosts.get(host);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                hosts.put(host, indexes);
+            }
+            indexes.add(i);
+        }
+        for (Map.Entry<HttpHost, List<Integer>> entry : hosts.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            int answered = entry.getKey() == null ? 0 : pipeline(entry.getKey(), requests, indexes, results);
+            for (int i = answered; i < indexes.size(); i++) {
+                results[indexes.get(i)] = fallback(requests.get(indexes.get(i)));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return number of the requests (from the start of the indexes) that
+     * were answered on the pipelined connection
+     */
+    private int pipeline(HttpHost target, List<? extends HttpUriRequest> requests, List<Integer> indexes,
+            BatchResult[] results) throws InterruptedException {
+        boolean secure = _connectionManager.getSchemeRegistry().getScheme(target).isLayered();
+        HttpRoute route = new HttpRoute(target, null, secure);
+        ManagedClientConnection connection;
+        try {
+            connection = _connectionManager.requestConnection(route, null)
+                    .getConnection(HttpClientParams.getConnectionManagerTimeout(_params), TimeUnit.MILLISECONDS);
+        } catch (IOException ex) {
+            log.debug("No connection for pipelining to {}, falling back: {}", target, ex.toString());
+            return 0;
+        }
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, target);
+        context.setAttribute(ExecutionContext.HTTP_CONNECTION, connection);
+        int sent = 0;
+        int answered = 0;
+        long keepAlive = -1;
+        boolean reusable = false;
+        try {
+            if (!connection.isOpen()) {
+                connection.open(route, context, _params);
+            }
+            connection.setSocketTimeout(HttpConnectionParams.getSoTimeout(_params));
+            while (answered < indexes.size()) {
+                if (sent < indexes.size() && sent - answered < _depth) {
+                    while (sent < indexes.size() && sent - answered < _depth) {
+                        send(connection, requests.get(indexes.get(sent)), context);
+                        sent++;
+                    }
+                    connection.flush();
+                }
+                HttpUriRequest request = requests.get(indexes.get(answered));
+                HttpResponse response = receive(connection, request);
+                results[indexes.get(answered)] = new BatchResult(request, response, null);
+                answered++;
+                reusable = REUSE_STRATEGY.keepAlive(response, context);
+                if (!reusable) {
+                    log.debug("Server closed the pipeline to {} after {} of {} requests.", new Object[]{
+                        target, answered, indexes.size()});
+                    break;
+                }
+                keepAlive = KEEP_ALIVE_STRATEGY.getKeepAliveDuration(response, context);
+            }
+        } catch (IOException ex) {
+            log.debug("Pipeline to {} failed after {} of {} requests: {}", new Object[]{
+                target, answered, indexes.size(), ex.toString()});
+            reusable = false;
+        } catch (HttpException ex) {
+            log.debug("Pipeline to {} failed after {} of {} requests: {}", new Object[]{
+                target, answered, indexes.size(), ex.toString()});
+            reusable = false;
+        } finally {
+            release(connection, reusable, keepAlive);
+        }
+        return answered;
+    }
+
+    private void send(ManagedClientConnection connection, HttpUriRequest request, HttpContext context)
+            throws IOException, HttpException {
+        URI uri = request.getURI();
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        BasicHttpRequest message = new BasicHttpRequest(request.getMethod(), path, HttpVersion.HTTP_1_1);
+        message.setHeaders(request.getAllHeaders());
+        message.setParams(new DefaultedHttpParams(request.getParams(), _params));
+        PROCESSOR.process(message, context);
+        if (request instanceof AbortableHttpRequest) {
+            ((AbortableHttpRequest) request).setReleaseTrigger(connection);
+        }
+        connection.sendRequestHeader(message);
+    }
+
+    private HttpResponse receive(ManagedClientConnection connection, HttpUriRequest request)
+            throws IOException, HttpException {
+        HttpResponse response;
+        do {
+            response = connection.receiveResponseHeader();
+        } while (response.getStatusLine().getStatusCode() < HttpStatus.SC_OK);
+        int status = response.getStatusLine().getStatusCode();
+        if (!"HEAD".equals(request.getMethod()) && status != HttpStatus.SC_NO_CONTENT
+                && status != HttpStatus.SC_NOT_MODIFIED) {
+            connection.receiveResponseEntity(response);
+            // The next response follows on the same stream, so read this one now.
+            ResponseBodyReader.buffer(response);
+        }
+        return response;
+    }
+
+    private void release(ManagedClientConnection connection, boolean reusable, long keepAlive) {
+        try {
+            if (reusable) {
+                connection.markReusable();
+            } else {
+                connection.shutdown();
+            }
+        } catch (IOException ex) {
+            log.debug("Pipelined connection could not be shut down: {}", ex.toString());
+        } finally {
+            _connectionManager.releaseConnection(connection, keepAlive, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private BatchResult fallback(HttpUriRequest request) {
+        try {
+            return new BatchResult(request, ResponseBodyReader.buffer(_client.execute(request)), null);
+        } catch (Exception ex) {
+            request.abort();
+            return new BatchResult(request, null, ex);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import org.apache.http.params.HttpParams;
+
+/**
+ * The protocol spoken by the instances of the get*Instance() factories and
+ * the {@link SimulityHttpClient.Builder}.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public enum Protocol {
+
+    /**
+     * HTTP/1.1 over the pooled (or single) connections of the Apache
+     * HttpClient.
+     */
+    HTTP_1_1 {
+        @Override
+        HttpTransport newTransport(HttpParams params, TlsConfiguration tls) {
+            return null;
+        }
+    },
+    /**
+     * HTTP/2 through the HTTP client of the JDK: h2 negotiated with ALPN over
+     * TLS, and h2c upgraded from HTTP/1.1 for plain connections. The requests
+     * to a host are multiplexed as streams over one connection, with flow
+     * control and HPACK header compression; servers that do not speak HTTP/2
+     * are served over HTTP/1.1.
+     */
+    HTTP_2 {
+        @Override
+        HttpTransport newTransport(HttpParams params, TlsConfiguration tls) {
+            return new Http2Transport(params, tls);
+        }
+    };
+
+    /**
+     * @param params parameters of the client (timeouts)
+     * @param tls TLS settings of the client
+     * @return a new transport for this protocol, or null for the Apache
+     * HttpClient of the instance
+     */
+    abstract HttpTransport newTransport(HttpParams params, TlsConfiguration tls);
+}
@@ -0,0 +1,360 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Builds request entities for the common body types. Every entity other than
+ * a stream of unknown length declares its Content-Length up front, so the
+ * request is sent without chunked encoding. Form bodies are encoded straight
+ * to bytes through a buffer that is reused by each thread and copied once to
+ * an array of the exact size; buffer and stream bodies are written through
+ * the reusable buffer of {@link ResponseBodyReader} and files are transferred
+ * from their channel.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public final class RequestBodyEncoder {
+
+    /**
+     * Content type of form bodies, matching
+     * {@link org.apache.http.client.entity.UrlEncodedFormEntity}.
+     */
+    public static final ContentType FORM = ContentType.APPLICATION_FORM_URLENCODED;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(Consts.ASCII);
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[ResponseBodyReader.BUFFER_SIZE];
+        }
+    };
+
+    private RequestBodyEncoder() {
+    }
+
+    /**
+     * @param parameters form fields, in order
+     * @return the fields as an application/x-www-form-urlencoded body in
+     * ISO-8859-1
+     */
+    public static HttpEntity form(List<? extends NameValuePair> parameters) {
+        return form(parameters, FORM);
+    }
+
+    /**
+     * @param parameters form fields, in order
+     * @param contentType form content type, its charset is used to encode
+     * characters outside US-ASCII
+     * @return the fields as an application/x-www-form-urlencoded body
+     */
+    public static HttpEntity form(List<? extends NameValuePair> parameters, ContentType contentType) {
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : Consts.ISO_8859_1;
+        Scratch scratch = new Scratch();
+        for (NameValuePair parameter : parameters) {
+            if (scratch.length > 0) {
+                scratch.put((byte) '&');
+            }
+            scratch.encode(parameter.getName(), charset);
+            if (parameter.getValue() != null) {
+                scratch.put((byte) '=');
+                scratch.encode(parameter.getValue(), charset);
+            }
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(Arrays.copyOf(scratch.data, scratch.length), contentType);
+        scratch.release();
+        return entity;
+    }
+
+    /**
+     * @param json JSON document
+     * @return the document as an application/json body in UTF-8
+     */
+    public static HttpEntity json(String json) {
+        return bytes(json.getBytes(ContentType.APPLICATION_JSON.getCharset()), ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * @param json JSON document, already encoded in UTF-8
+     * @return the document as an application/json body
+     */
+    public static HttpEntity json(byte[] json) {
+        return bytes(json, ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * @param body body, used without a copy
+     * @param contentType content type of the body
+     * @return the body as an entity
+     */
+    public static HttpEntity bytes(byte[] body, ContentType contentType) {
+        return new ByteArrayEntity(body, contentType);
+    }
+
+    /**
+     * The remaining bytes of the buffer are sent; the position of the buffer
+     * is left unchanged so the entity can be written more than once.
+     *
+     * @param body body, used without a copy
+     * @param contentType content type of the body
+     * @return the body as an entity
+     */
+    public static HttpEntity buffer(ByteBuffer body, ContentType contentType) {
+        return new ByteBufferEntity(body, contentType);
+    }
+
+    /**
+     * @param file file to send
+     * @param contentType content type of the file
+     * @return the file as an entity
+     */
+    public static HttpEntity file(File file, ContentType contentType) {
+        return file(file.toPath(), contentType);
+    }
+
+    /**
+     * The file is sent with {@link java.nio.channels.FileChannel#transferTo}
+     * rather than read onto the heap, whatever its size.
+     *
+     * @param file file to send
+     * @param contentType content type of the file
+     * @return the file as an entity
+     */
+    public static HttpEntity file(Path file, ContentType contentType) {
+        return new FileChannelEntity(file, contentType);
+    }
+
+    /**
+     * The stream is read once, when the request is sent, and closed
+     * afterwards. A request with such a body cannot be retried.
+     *
+     * @param body stream of the body
+     * @param length number of bytes in the stream, or a negative value to send
+     * the body chunked
+     * @param contentType content type of the body
+     * @return the stream as an entity
+     */
+    public static HttpEntity stream(InputStream body, long length, ContentType contentType) {
+        return new StreamEntity(body, length, contentType);
+    }
+
+    /**
+     * Growable view of the scratch buffer of the calling thread.
+     */
+    private static final class Scratch {
+
+        private byte[] data = SCRATCH.get();
+        private int length;
+
+        private void put(byte b) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length << 1);
+            }
+            data[length++] = b;
+        }
+
+        private void encode(String value, Charset charset) {
+            int i = 0;
+            while (i < value.length()) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    int end = i + 1;
+                    while (end < value.length() && value.charAt(end) >= 0x80) {
+                        end++;
+                    }
+                    ByteBuffer encoded = charset.encode(CharBuffer.wrap(value, i, end));
+                    while (encoded.hasRemaining()) {
+                        escape(encoded.get() & 0xFF);
+                    }
+                    i = end;
+                    continue;
+                }
+                if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                        || c == '-' || c == '_' || c == '.' || c == '*') {
+                    put((byte) c);
+                } else if (c == ' ') {
+                    put((byte) '+');
+                } else {
+                    escape(c);
+                }
+                i++;
+            }
+        }
+
+        private void escape(int b) {
+            put((byte) '%');
+            put(HEX[b >> 4]);
+            put(HEX[b & 0x0F]);
+        }
+
+        /**
+         * Keeps a grown buffer for the next body, within reason.
+         */
+        private void release() {
+            if (data.length <= ResponseBodyReader.BUFFER_SIZE << 4) {
+                SCRATCH.set(data);
+            }
+        }
+    }
+
+    private static final class ByteBufferEntity extends AbstractHttpEntity {
+
+        private final ByteBuffer _body;
+
+        private ByteBufferEntity(ByteBuffer body, ContentType contentType) {
+            _body = body.duplicate();
+            if (contentType != null) {
+                setContentType(contentType.toString());
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return _body.remaining();
+        }
+
+        @Override
+        public InputStream getContent() {
+            final ByteBuffer body = _body.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return body.hasRemaining() ? body.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!body.hasRemaining()) {
+                        return -1;
+                    }
+                    len = Math.min(len, body.remaining());
+                    body.get(b, off, len);
+                    return len;
+                }
+
+                @Override
+                public int available() {
+                    return body.remaining();
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            ByteBuffer body = _body.duplicate();
+            if (body.hasArray()) {
+                out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                byte[] buffer = ResponseBodyReader.buffer();
+                while (body.hasRemaining()) {
+                    int length = Math.min(buffer.length, body.remaining());
+                    body.get(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            }
+            out.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private static final class StreamEntity extends AbstractHttpEntity {
+
+        private final InputStream _body;
+        private final long _length;
+
+        private StreamEntity(InputStream body, long length, ContentType contentType) {
+            _body = body;
+            _length = length;
+            setChunked(length < 0);
+            if (contentType != null) {
+                setContentType(contentType.toString());
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return _length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return _body;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            byte[] buffer = ResponseBodyReader.buffer();
+            try {
+                long remaining = _length;
+                int read;
+                while (remaining != 0
+                        && (read = _body.read(buffer, 0, remaining < 0 ? buffer.length : (int) Math.min(buffer.length, remaining))) != -1) {
+                    out.write(buffer, 0, read);
+                    if (remaining > 0) {
+                        remaining -= read;
+                    }
+                }
+            } finally {
+                _body.close();
+            }
+            out.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Reads response entities without line splitting or string concatenation. The
+ * output is sized from the Content-Length of the entity when it is known,
+ * growing with the bytes received rather than trusting the header up front,
+ * and text is decoded with the charset of the Content-Type (UTF-8 when none
+ * is given, as JSON requires). Copying is done through a buffer that is reused
+ * by each thread.
+ *
+ * Every read closes the entity content stream which releases the connection
+ * back to the connection manager.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public final class ResponseBodyReader {
+
+    /**
+     * Charset used when the entity does not declare one.
+     */
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+    static final int BUFFER_SIZE = 8192;
+    /**
+     * Most allocated for a body before its bytes arrive, whatever its
+     * Content-Length claims.
+     */
+    static final int MAX_INITIAL_CAPACITY = BUFFER_SIZE * 8;
+    private static final byte[] EMPTY = new byte[0];
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Receives the body of a response as it is read.
+     */
+    public interface ChunkHandler {
+
+        /**
+         * @param buffer buffer holding the chunk, only valid for the duration
+         * of the call (it is reused for the next chunk)
+         * @param offset start of the chunk in the buffer
+         * @param length number of bytes in the chunk
+         * @throws IOException to stop reading
+         */
+        void onChunk(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private ResponseBodyReader() {
+    }
+
+    /**
+     * @param entity response entity
+     * @return the body of the entity
+     * @throws IOException if the body could not be read
+     */
+    public static byte[] toByteArray(HttpEntity entity) throws IOException {
+        Body body = read(entity);
+        if (body.length == body.data.length) {
+            return body.data;
+        }
+        return Arrays.copyOf(body.data, body.length);
+    }
+
+    /**
+     * @param entity response entity
+     * @return the body of the entity, wrapping the read bytes without a copy
+     * @throws IOException if the body could not be read
+     */
+    public static ByteBuffer toByteBuffer(HttpEntity entity) throws IOException {
+        Body body = read(entity);
+        return ByteBuffer.wrap(body.data, 0, body.length);
+    }
+
+    /**
+     * @param entity response entity
+     * @return the body decoded with the charset of the entity
+     * @throws IOException if the body could not be read
+     */
+    public static String toString(HttpEntity entity) throws IOException {
+        return toString(entity, DEFAULT_CHARSET);
+    }
+
+    /**
+     * @param entity response entity
+     * @param defaultCharset charset used when the entity does not declare one
+     * @return the body decoded with the charset of the entity
+     * @throws IOException if the body could not be read
+     */
+    public static String toString(HttpEntity entity, Charset defaultCharset) throws IOException {
+        Charset charset = charsetOf(entity, defaultCharset);
+        Body body = read(entity);
+        return new String(body.data, 0, body.length, charset);
+    }
+
+    /**
+     * Passes the body to the handler chunk by chunk without holding it in
+     * memory.
+     *
+     * @param entity response entity
+     * @param handler receiver of the chunks
+     * @return number of bytes read
+     * @throws IOException if the body could not be read or the handler failed
+     */
+    public static long stream(HttpEntity entity, ChunkHandler handler) throws IOException {
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return 0;
+        }
+        try {
+            byte[] buffer = BUFFER.get();
+            long total = 0;
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                handler.onChunk(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            content.close();
+        }
+    }
+
+    /**
+     * @param entity response entity
+     * @param defaultCharset charset used when the entity does not declare one
+     * @return charset declared in the Content-Type of the entity
+     */
+    public static Charset charsetOf(HttpEntity entity, Charset defaultCharset) {
+        try {
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null && contentType.getCharset() != null) {
+                return contentType.getCharset();
+            }
+        } catch (ParseException ex) {
+            // Malformed header, fall through to the default.
+        } catch (UnsupportedCharsetException ex) {
+            // Unknown charset, fall through to the default.
+        }
+        return defaultCharset;
+    }
+
+    /**
+     * Reads the entity of the response into memory so that the connection is
+     * released straight away and the response can be handed to another thread.
+     *
+     * @param response response to buffer
+     * @return the response, with a repeatable entity
+     * @throws IOException if the body could not be read
+     */
+    public static HttpResponse buffer(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity.isRepeatable()) {
+            return response;
+        }
+        ByteArrayEntity buffered = new ByteArrayEntity(toByteArray(entity));
+        buffered.setContentType(entity.getContentType());
+        buffered.setContentEncoding(entity.getContentEncoding());
+        response.setEntity(buffered);
+        return response;
+    }
+
+    /**
+     * @return the reusable buffer of the calling thread
+     */
+    static byte[] buffer() {
+        return BUFFER.get();
+    }
+
+    private static Body read(HttpEntity entity) throws IOException {
+        InputStream content = entity.getContent();
+        if (content == null) {
+            return new Body(EMPTY, 0);
+        }
+        try {
+            long contentLength = entity.getContentLength();
+            if (contentLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("Response body too large to buffer: " + contentLength);
+            }
+            if (contentLength >= 0) {
+                return readKnownLength(content, (int) contentLength);
+            }
+            return readUnknownLength(content);
+        } finally {
+            content.close();
+        }
+    }
+
+    private static Body readKnownLength(InputStream content, int contentLength) throws IOException {
+        byte[] data = new byte[Math.min(contentLength, MAX_INITIAL_CAPACITY)];
+        int length = 0;
+        int read;
+        while (length < contentLength) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(contentLength, (long) data.length << 1));
+            }
+            if ((read = content.read(data, length, data.length - length)) == -1) {
+                break;
+            }
+            length += read;
+        }
+        if (length < contentLength) {
+            return new Body(data, length);
+        }
+        // Drain anything beyond the declared length (should not happen).
+        Body rest = readUnknownLength(content);
+        if (rest.length == 0) {
+            return new Body(data, length);
+        }
+        byte[] joined = Arrays.copyOf(data, length + rest.length);
+        System.arraycopy(rest.data, 0, joined, length, rest.length);
+        return new Body(joined, joined.length);
+    }
+
+    private static Body readUnknownLength(InputStream content) throws IOException {
+        byte[] buffer = BUFFER.get();
+        byte[] data = EMPTY;
+        int length = 0;
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            if (length + read > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + read, Math.max(BUFFER_SIZE, data.length << 1)));
+            }
+            System.arraycopy(buffer, 0, data, length, read);
+            length += read;
+        }
+        return new Body(data, length);
+    }
+
+    private static final class Body {
+
+        private final byte[] data;
+        private final int length;
+
+        private Body(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
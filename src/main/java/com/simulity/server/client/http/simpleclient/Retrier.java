@@ -0,0 +1,210 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries the requests of a client, see {@link RetryConfiguration}. The
+ * waits between attempts are spent on the calling thread.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class Retrier {
+
+    private static final Logger log = LoggerFactory.getLogger(Retrier.class);
+    private final RetryConfiguration _configuration;
+    private final TokenBudget _budget;
+    private final LongAdder _retries = new LongAdder();
+
+    Retrier(RetryConfiguration configuration) {
+        _configuration = configuration.copy();
+        _budget = new TokenBudget(_configuration.getBudgetRatio(), _configuration.getBudgetBurst());
+    }
+
+    /**
+     * @return number of retries made
+     */
+    long getRetries() {
+        return _retries.sum();
+    }
+
+    /**
+     * @param client client sending the attempts
+     * @param request request to send
+     * @return the response of the last attempt
+     * @throws IOException the failure of the last attempt, with the failures
+     * of the earlier attempts suppressed
+     */
+    HttpResponse execute(SimulityHttpClient client, HttpUriRequest request) throws IOException {
+        _budget.deposit();
+        IOException failure = null;
+        for (int attempt = 1;; attempt++) {
+            HttpResponse response;
+            try {
+                response = client.attempt(request);
+            } catch (IOException ex) {
+                if (failure != null) {
+                    ex.addSuppressed(failure);
+                }
+                failure = ex;
+                if (attempt >= _configuration.getMaxAttempts() || !isRetryable(request, ex) || !_budget.withdraw()) {
+                    throw ex;
+                }
+                pause(request, backoff(attempt), ex.toString());
+                continue;
+            }
+            int status = response.getStatusLine().getStatusCode();
+            if (attempt >= _configuration.getMaxAttempts() || !_configuration.getStatuses().contains(status)
+                    || !isResendable(request)) {
+                return response;
+            }
+            long retryAfter = retryAfter(response);
+            if (retryAfter > _configuration.getMaxRetryAfter() || !_budget.withdraw()) {
+                return response;
+            }
+            release(response);
+            pause(request, retryAfter >= 0 ? retryAfter : backoff(attempt), response.getStatusLine().toString());
+        }
+    }
+
+    /**
+     * @param request failed request
+     * @param failure failure of the request
+     * @return whether the request can be sent again
+     */
+    boolean isRetryable(HttpUriRequest request, IOException failure) {
+        if (request.isAborted() || failure instanceof ConcurrencyLimitExceededException) {
+            return false;
+        }
+        if (failure instanceof ConnectException || failure instanceof ConnectTimeoutException) {
+            // Nothing was sent.
+            return true;
+        }
+        if (failure instanceof InterruptedIOException || failure instanceof UnknownHostException
+                || failure instanceof SSLException) {
+            return false;
+        }
+        return isResendable(request);
+    }
+
+    /**
+     * @param request request to check
+     * @return whether the method of the request is idempotent and its body,
+     * if any, can be sent again
+     */
+    boolean isResendable(HttpUriRequest request) {
+        if (request.isAborted() || !_configuration.getIdempotentMethods().contains(request.getMethod())) {
+            return false;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+
+    /**
+     * @param attempt number of the attempt that failed, from one
+     * @return a random delay up to the backoff cap of the attempt, in
+     * nanoseconds
+     */
+    long backoff(int attempt) {
+        long cap = Math.min(_configuration.getMaxDelay(), _configuration.getBaseDelay() << Math.min(attempt - 1, 30));
+        if (cap < 0) {
+            cap = _configuration.getMaxDelay();
+        }
+        return cap == 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @param response response to check
+     * @return the wait asked for by the Retry-After of the response (delay
+     * seconds or an HTTP date), in nanoseconds, or -1 when there is none
+     */
+    static long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            // Not delay seconds, try a date.
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toNanos());
+        } catch (DateTimeParseException ex) {
+            log.debug("Ignoring malformed Retry-After: {}", value);
+            return -1;
+        }
+    }
+
+    private void pause(HttpUriRequest request, long nanos, String cause) throws IOException {
+        _retries.increment();
+        log.debug("Retrying {} in {}ms after {}", new Object[]{request.getURI(), TimeUnit.NANOSECONDS.toMillis(nanos), cause});
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry " + request.getURI());
+        }
+    }
+
+    /**
+     * Reads the body of a response that is not returned, so that its
+     * connection can be reused by the retry.
+     */
+    private static void release(HttpResponse response) {
+        try {
+            EntityUtils.consume(response.getEntity());
+        } catch (IOException ex) {
+            log.debug("Releasing the response before a retry failed", ex);
+        }
+    }
+}
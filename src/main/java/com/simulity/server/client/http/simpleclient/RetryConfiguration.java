@@ -0,0 +1,222 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the retries made by
+ * {@link SimulityHttpClient#retry(RetryConfiguration)}. A request is retried
+ * up to the maximum number of attempts:
+ * <ul>
+ * <li>after a failure to connect, whatever its method, since nothing was
+ * sent;</li>
+ * <li>after any other I/O failure or a retryable status (429, 502, 503 and
+ * 504 unless configured otherwise) when its method is idempotent and its body,
+ * if any, can be sent again.</li>
+ * </ul>
+ * Timeouts other than connect timeouts, unknown hosts, TLS failures, aborted
+ * requests and requests turned away by the concurrency limit are not
+ * retried.
+ *
+ * Retries wait for an exponential backoff with full jitter (a random delay up
+ * to the base delay doubled for every attempt, within the maximum) or, when
+ * the response carries one, for its Retry-After; a Retry-After beyond the
+ * limit ends the retries. Retries are paid for from a budget: every request
+ * adds the budget ratio to it (up to the burst) and every retry takes one, so
+ * that during an outage retries add at most the ratio to the load.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class RetryConfiguration {
+
+    private int _maxAttempts = 3;
+    private long _baseDelay = TimeUnit.MILLISECONDS.toNanos(50);
+    private long _maxDelay = TimeUnit.SECONDS.toNanos(2);
+    private long _maxRetryAfter = TimeUnit.SECONDS.toNanos(30);
+    private double _budgetRatio = 0.1;
+    private int _budgetBurst = 10;
+    private Set<Integer> _statuses = new TreeSet<Integer>(Arrays.asList(429, 502, 503, 504));
+    private Set<String> _idempotentMethods = new LinkedHashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE"));
+
+    /**
+     * @param maxAttempts attempts per request, including the first
+     * @return RetryConfiguration with the attempts applied.
+     */
+    public RetryConfiguration maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive: " + maxAttempts);
+        }
+        _maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param baseDelay backoff cap of the first retry, doubled for each
+     * following retry
+     * @param maxDelay highest backoff cap
+     * @param unit unit of the delays
+     * @return RetryConfiguration with the backoff applied.
+     */
+    public RetryConfiguration backoff(long baseDelay, long maxDelay, TimeUnit unit) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid backoff: " + baseDelay + ".." + maxDelay + " " + unit);
+        }
+        _baseDelay = unit.toNanos(baseDelay);
+        _maxDelay = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * @param maxRetryAfter longest Retry-After waited for; a response asking
+     * for a longer wait is returned as it is
+     * @param unit unit of the wait
+     * @return RetryConfiguration with the limit applied.
+     */
+    public RetryConfiguration maxRetryAfter(long maxRetryAfter, TimeUnit unit) {
+        if (maxRetryAfter < 0) {
+            throw new IllegalArgumentException("Max Retry-After must not be negative: " + maxRetryAfter);
+        }
+        _maxRetryAfter = unit.toNanos(maxRetryAfter);
+        return this;
+    }
+
+    /**
+     * @param ratio retries allowed per request, between zero and one
+     * @param burst retries that can be saved up
+     * @return RetryConfiguration with the budget applied.
+     */
+    public RetryConfiguration budget(double ratio, int burst) {
+        if (ratio < 0 || ratio > 1 || burst < 1) {
+            throw new IllegalArgumentException("Invalid budget: " + ratio + " with a burst of " + burst);
+        }
+        _budgetRatio = ratio;
+        _budgetBurst = burst;
+        return this;
+    }
+
+    /**
+     * @param statuses response statuses that are retried
+     * @return RetryConfiguration with the statuses applied.
+     */
+    public RetryConfiguration retryOn(int... statuses) {
+        Set<Integer> set = new TreeSet<Integer>();
+        for (int status : statuses) {
+            set.add(status);
+        }
+        _statuses = set;
+        return this;
+    }
+
+    /**
+     * @param methods methods that can be sent more than once with the same
+     * effect
+     * @return RetryConfiguration with the methods applied.
+     */
+    public RetryConfiguration idempotentMethods(String... methods) {
+        Set<String> set = new LinkedHashSet<String>();
+        for (String method : methods) {
+            set.add(method.toUpperCase(Locale.ROOT));
+        }
+        _idempotentMethods = set;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return _maxAttempts;
+    }
+
+    /**
+     * @return backoff cap of the first retry in nanoseconds
+     */
+    public long getBaseDelay() {
+        return _baseDelay;
+    }
+
+    /**
+     * @return highest backoff cap in nanoseconds
+     */
+    public long getMaxDelay() {
+        return _maxDelay;
+    }
+
+    /**
+     * @return longest Retry-After waited for, in nanoseconds
+     */
+    public long getMaxRetryAfter() {
+        return _maxRetryAfter;
+    }
+
+    public double getBudgetRatio() {
+        return _budgetRatio;
+    }
+
+    public int getBudgetBurst() {
+        return _budgetBurst;
+    }
+
+    public Set<Integer> getStatuses() {
+        return Collections.unmodifiableSet(_statuses);
+    }
+
+    public Set<String> getIdempotentMethods() {
+        return Collections.unmodifiableSet(_idempotentMethods);
+    }
+
+    /**
+     * @return an independent copy of this configuration
+     */
+    public RetryConfiguration copy() {
+        RetryConfiguration copy = new RetryConfiguration();
+        copy._maxAttempts = _maxAttempts;
+        copy._baseDelay = _baseDelay;
+        copy._maxDelay = _maxDelay;
+        copy._maxRetryAfter = _maxRetryAfter;
+        copy._budgetRatio = _budgetRatio;
+        copy._budgetBurst = _budgetBurst;
+        copy._statuses = new TreeSet<Integer>(_statuses);
+        copy._idempotentMethods = new LinkedHashSet<String>(_idempotentMethods);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryConfiguration{maxAttempts=" + _maxAttempts
+                + ", baseDelay=" + TimeUnit.NANOSECONDS.toMillis(_baseDelay) + "ms"
+                + ", maxDelay=" + TimeUnit.NANOSECONDS.toMillis(_maxDelay) + "ms"
+                + ", maxRetryAfter=" + TimeUnit.NANOSECONDS.toMillis(_maxRetryAfter) + "ms"
+                + ", budgetRatio=" + _budgetRatio
+                + ", budgetBurst=" + _budgetBurst
+                + ", statuses=" + _statuses
+                + ", idempotentMethods=" + _idempotentMethods + "}";
+    }
+}
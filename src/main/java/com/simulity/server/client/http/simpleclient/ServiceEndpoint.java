@@ -0,0 +1,144 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpHost;
+
+/**
+ * A backend replica of a logical service, with the live figures its
+ * selection is based on: the number of requests in flight and a peak
+ * sensitive moving average of the time to response. A response slower than
+ * the average replaces it at once while faster ones pull it down gradually,
+ * so a replica that slows down is avoided straight away and trusted again
+ * slowly. Failures and 5xx responses count as a multiple of the average, up
+ * to five seconds.
+ *
+ * The average decays with the time since it was last updated rather than
+ * with the number of samples, so a replica that is avoided after a failure
+ * becomes cheaper while it gets no traffic and is tried again.
+ *
+ * The figures are updated without locking; a sample lost to a concurrent
+ * update does not matter to the selection.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public final class ServiceEndpoint {
+
+    static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int FAILURE_PENALTY = 5;
+    private static final long MIN_FAILURE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_FAILURE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private final HttpHost _host;
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    private volatile double _latencyNanos;
+    private volatile long _updated = System.nanoTime();
+
+    ServiceEndpoint(HttpHost host) {
+        _host = host;
+    }
+
+    /**
+     * @return host (name, port and scheme) requests are sent to
+     */
+    public HttpHost getHost() {
+        return _host;
+    }
+
+    /**
+     * @return number of requests sent and not yet answered
+     */
+    public int getInFlight() {
+        return _inFlight.get();
+    }
+
+    /**
+     * @return moving average of the time to response, in microseconds
+     */
+    public double getLatencyMicros() {
+        return latencyNanos(System.nanoTime()) / 1000;
+    }
+
+    /**
+     * @param now {@link System#nanoTime()} to decay the average to
+     * @return moving average of the time to response, in nanoseconds
+     */
+    double latencyNanos(long now) {
+        return _latencyNanos * weight(now - _updated);
+    }
+
+    /**
+     * @return expected wait of the next request: the average latency scaled
+     * by the queue it would join
+     */
+    double cost() {
+        return cost(System.nanoTime());
+    }
+
+    double cost(long now) {
+        return (latencyNanos(now) + 1) * (_inFlight.get() + 1);
+    }
+
+    void started() {
+        _inFlight.incrementAndGet();
+    }
+
+    void completed(long nanos) {
+        completed(nanos, System.nanoTime());
+    }
+
+    void completed(long nanos, long now) {
+        _inFlight.decrementAndGet();
+        record(nanos, now);
+    }
+
+    void failed(long nanos) {
+        failed(nanos, System.nanoTime());
+    }
+
+    void failed(long nanos, long now) {
+        _inFlight.decrementAndGet();
+        double penalty = Math.max(Math.max(nanos, MIN_FAILURE_NANOS), latencyNanos(now)) * FAILURE_PENALTY;
+        record((long) Math.min(penalty, MAX_FAILURE_NANOS), now);
+    }
+
+    private void record(long nanos, long now) {
+        double latency = _latencyNanos;
+        double weight = weight(now - _updated);
+        _latencyNanos = nanos > latency ? nanos : latency * weight + nanos * (1 - weight);
+        _updated = now;
+    }
+
+    private static double weight(long elapsed) {
+        return Math.exp(-Math.max(elapsed, 0) / (double) DECAY_NANOS);
+    }
+
+    @Override
+    public String toString() {
+        return _host.toURI() + "{inFlight=" + _inFlight.get() + ", latency=" + (long) getLatencyMicros() + "us}";
+    }
+}
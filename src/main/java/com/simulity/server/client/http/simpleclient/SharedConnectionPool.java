@@ -0,0 +1,215 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A PoolingClientConnectionManager shared by every client instance built with
+ * the same schemes and pool configuration. Each instance holds a reference
+ * which it gives up on destroy; the pool is shut down once the last
+ * reference is released, so destroying one instance never tears down
+ * connections another instance is still using.
+ *
+ * Acquiring and releasing are lock free.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class SharedConnectionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedConnectionPool.class);
+    private static final ConcurrentMap<Key, SharedConnectionPool> POOLS = new ConcurrentHashMap<Key, SharedConnectionPool>();
+    private final Key _key;
+    private final PoolingClientConnectionManager _connectionManager;
+    private final AtomicInteger _references = new AtomicInteger(1);
+    private final ScheduledFuture<?> _eviction;
+    private final ConnectionWarmer _warmer;
+
+    private SharedConnectionPool(Key key, SchemeRegistry registry, HttpParams params) {
+        _key = key;
+        ConnectionPoolConfiguration configuration = key._configuration;
+        if (configuration.getMinIdlePerRoute() > 0) {
+            // Records the routes in use so the warmer knows what to top up.
+            _connectionManager = new PoolingClientConnectionManager(registry,
+                    configuration.getConnectionTtl(), TimeUnit.MILLISECONDS) {
+                @Override
+                public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+                    _warmer.used(route);
+                    return super.requestConnection(route, state);
+                }
+            };
+        } else {
+            _connectionManager = new PoolingClientConnectionManager(registry,
+                    configuration.getConnectionTtl(), TimeUnit.MILLISECONDS);
+        }
+        configuration.applyTo(_connectionManager);
+        _warmer = new ConnectionWarmer(_connectionManager, params, configuration.getMinIdlePerRoute());
+        if (configuration.getIdleTimeout() > 0) {
+            _eviction = IdleConnectionEvictor.schedule(_connectionManager, configuration.getIdleTimeout());
+        } else {
+            _eviction = null;
+        }
+    }
+
+    /**
+     * @param registry schemes supported by the pool
+     * @param configuration sizing of the pool
+     * @return a referenced pool for the schemes and configuration, shared
+     * with other holders when one is already open
+     */
+    static SharedConnectionPool acquire(SchemeRegistry registry, ConnectionPoolConfiguration configuration) {
+        return acquire(registry, configuration, TlsConfiguration.getDefault(), null);
+    }
+
+    /**
+     * @param registry schemes supported by the pool
+     * @param configuration sizing of the pool
+     * @param tls TLS settings of the HTTPS scheme of the registry, pools are
+     * only shared by clients with the same settings
+     * @param params connection parameters used when the pool is created, for
+     * the connections it opens ahead of demand
+     * @return a referenced pool for the schemes and configuration, shared
+     * with other holders when one is already open
+     */
+    static SharedConnectionPool acquire(SchemeRegistry registry, ConnectionPoolConfiguration configuration,
+            TlsConfiguration tls, HttpParams params) {
+        Key key = new Key(registry, configuration.copy(), tls);
+        while (true) {
+            SharedConnectionPool existing = POOLS.get(key);
+            if (existing != null) {
+                if (existing.retain()) {
+                    log.debug("Sharing connection pool: {}", key);
+                    return existing;
+                }
+                // Released concurrently, replace it.
+                POOLS.remove(key, existing);
+                continue;
+            }
+            SharedConnectionPool created = new SharedConnectionPool(key, registry, params);
+            if (POOLS.putIfAbsent(key, created) == null) {
+                log.debug("Constructed connection pool: {}", key);
+                return created;
+            }
+            created.shutdown();
+        }
+    }
+
+    PoolingClientConnectionManager getConnectionManager() {
+        return _connectionManager;
+    }
+
+    ConnectionWarmer getWarmer() {
+        return _warmer;
+    }
+
+    /**
+     * @return number of holders of the pool
+     */
+    int references() {
+        return _references.get();
+    }
+
+    /**
+     * Gives up a reference, shutting the pool down when it was the last.
+     */
+    void release() {
+        if (_references.decrementAndGet() == 0) {
+            POOLS.remove(_key, this);
+            log.debug("Shutting down connection pool: {}", _key);
+            shutdown();
+        }
+    }
+
+    private void shutdown() {
+        if (_eviction != null) {
+            _eviction.cancel(false);
+        }
+        _warmer.stop();
+        _connectionManager.shutdown();
+    }
+
+    private boolean retain() {
+        while (true) {
+            int references = _references.get();
+            if (references == 0) {
+                return false;
+            }
+            if (_references.compareAndSet(references, references + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final List<String> _schemes;
+        private final ConnectionPoolConfiguration _configuration;
+        private final TlsConfiguration _tls;
+
+        private Key(SchemeRegistry registry, ConnectionPoolConfiguration configuration, TlsConfiguration tls) {
+            List<String> schemes = new ArrayList<String>(registry.getSchemeNames());
+            Collections.sort(schemes);
+            _schemes = schemes;
+            _configuration = configuration;
+            _tls = tls;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            // The same TLS configuration, not an equal one: each builds its own context.
+            return _schemes.equals(other._schemes) && _configuration.equals(other._configuration)
+                    && _tls == other._tls;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * _schemes.hashCode() + _configuration.hashCode()) + System.identityHashCode(_tls);
+        }
+
+        @Override
+        public String toString() {
+            return _schemes + " " + _configuration;
+        }
+    }
+}
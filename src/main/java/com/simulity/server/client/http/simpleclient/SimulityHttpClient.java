@@ -25,32 +25,74 @@
  */
 package com.simulity.server.client.http.simpleclient;
 
-import java.io.BufferedReader;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolException;
+import org.apache.http.client.ClientProtocolException;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.EntityEnclosingRequestWrapper;
+import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.apache.http.impl.client.cache.HeapResourceFactory;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.AbstractHttpParams;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,56 +102,344 @@ import org.slf4j.LoggerFactory;
  * and for requests to be made at high throughput via a threadpool or via single
  * instances via the methods provided.
  *
+ * Instances returned by the get*Instance() factories and the {@link Builder}
+ * are independent of each other and fully set up on construction; the fluent
+ * setup methods remain for compatibility but should not be called on an
+ * instance that is already in use by other threads.
+ *
  * @author Christopher Burke <christopher.burke@simulity.com>
  */
 public class SimulityHttpClient {
 
-    private static SimulityHttpClient _clientInstance;
     private static Logger log = LoggerFactory.getLogger(SimulityHttpClient.class);
+    private static final long DOWNLOAD_TRANSFER_SIZE = 1 << 20;
     private AbstractHttpParams _httpParams;
     private SchemeRegistry _httpRegistry;
     private Scheme _httpScheme;
-    private ClientConnectionManager _connectionManager;
-    private HttpClient _httpClient;
+    private volatile ClientConnectionManager _connectionManager;
+    private volatile HttpClient _httpClient;
+    private final AtomicReference<SharedConnectionPool> _sharedPool = new AtomicReference<SharedConnectionPool>();
+    private final ConcurrentMap<HttpHost, Integer> _prewarmed = new ConcurrentHashMap<HttpHost, Integer>();
+    private ConnectionPoolConfiguration _poolConfiguration = new ConnectionPoolConfiguration();
+    private ExecutionMode _executionMode = ExecutionMode.PLATFORM_THREADS;
+    private ExecutorService _asyncExecutor;
+    private volatile boolean _quietHotPath;
+    private volatile SingleFlight _singleFlight;
+    private ClientMetrics _metrics;
+    private volatile HttpTransport _transport;
+    private Protocol _protocol = Protocol.HTTP_1_1;
+    private CacheConfiguration _cacheConfiguration;
+    private BoundedHttpCacheStorage _cacheStorage;
+    private boolean _compression;
+    private boolean _compressRequestBodies;
+    private ObjectMapper _objectMapper = JsonResponseReader.DEFAULT_MAPPER;
+    private TlsConfiguration _tlsConfiguration = TlsConfiguration.getDefault();
+    private volatile LoadBalancer _loadBalancer;
+    private volatile ConcurrencyLimiter _concurrencyLimiter;
+    private volatile Hedger _hedger;
+    private volatile Retrier _retrier;
 
     /**
-     * @return Basic instance of the SimulityHttpClient
+     * Constructs an instance with nothing set up, see {@link #builder()} for
+     * a ready to use instance.
      */
-    public static SimulityHttpClient getInstance() {
-        if (_clientInstance == null) {
-            log.debug("Constructing new " + SimulityHttpClient.class.getName());
-            _clientInstance = new SimulityHttpClient();
+    public SimulityHttpClient() {
+    }
+
+    private SimulityHttpClient(Builder builder) {
+        _poolConfiguration = builder._poolConfiguration.copy();
+        _executionMode = builder._executionMode;
+        _quietHotPath = builder._quietHotPath;
+        if (builder._singleFlight) {
+            _singleFlight = new SingleFlight();
+        }
+        if (builder._concurrencyLimit != null) {
+            concurrencyLimit(builder._concurrencyLimit);
+        }
+        if (builder._hedging != null) {
+            hedging(builder._hedging);
+        }
+        if (builder._retry != null) {
+            retry(builder._retry);
+        }
+        if (builder._metricsName != null) {
+            _metrics = new ClientMetrics(builder._metricsName);
+            _metrics.register();
         }
-        return _clientInstance;
+        basicHttpParams().setupRegistry();
+        _compression = builder._compression;
+        _compressRequestBodies = builder._compressRequestBodies;
+        if (builder._objectMapper != null) {
+            _objectMapper = builder._objectMapper;
+        }
+        if (builder._cacheConfiguration != null) {
+            _cacheConfiguration = builder._cacheConfiguration;
+            _cacheStorage = new BoundedHttpCacheStorage(_cacheConfiguration.getMaxEntries(), _cacheConfiguration.getMaxBytes());
+        }
+        if (builder._tlsConfiguration != null) {
+            _tlsConfiguration = builder._tlsConfiguration;
+        }
+        for (Map.Entry<String, HttpHost[]> service : builder._services.entrySet()) {
+            service(service.getKey(), service.getValue());
+        }
+        _protocol = builder._protocol;
+        _transport = builder._transport != null ? builder._transport : _protocol.newTransport(_httpParams, _tlsConfiguration);
+        if (builder._http) {
+            supportHttp();
+        }
+        if (builder._https) {
+            supportHttps();
+        }
+        if (builder._pooled) {
+            setupThreadPool();
+        }
+        getClient();
+    }
+
+    /**
+     * Holder of the basic instance, the class loader initialises (and safely
+     * publishes) it on first use.
+     */
+    private static class InstanceHolder {
+
+        private static final SimulityHttpClient INSTANCE = new SimulityHttpClient();
+    }
+
+    /**
+     * @return Basic instance of the SimulityHttpClient, shared by every caller
+     */
+    public static SimulityHttpClient getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return Builder of new, independent, instances of the SimulityHttpClient
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
      * @return HTTP instance (setup) of the SimulityHttpClient
      */
     public static SimulityHttpClient getHttpInstance() {
-        log.debug("Constructing new HttpInstance of " + SimulityHttpClient.class.getName());
-        return getInstance().basicHttpParams().setupRegistry().supportHttp().setupThreadPool();
+        return getHttpInstance(new ConnectionPoolConfiguration());
+    }
+
+    /**
+     * @param poolConfiguration sizing of the connection pool
+     * @return HTTP instance (setup) of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getHttpInstance(ConnectionPoolConfiguration poolConfiguration) {
+        log.debug("Constructing new HttpInstance of {}", SimulityHttpClient.class.getName());
+        return builder().supportHttp().poolConfiguration(poolConfiguration).build();
+    }
+
+    /**
+     * @param protocol protocol spoken by the instance
+     * @return HTTP instance (setup) of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getHttpInstance(Protocol protocol) {
+        log.debug("Constructing new {} HttpInstance of {}", protocol, SimulityHttpClient.class.getName());
+        return builder().supportHttp().protocol(protocol).build();
     }
 
     /**
      * @return HTTPS instance (setup) of the SimulityHttpClient
      */
     public static SimulityHttpClient getHttpsInstance() {
-        log.debug("Constructing new HttpsInstance of " + SimulityHttpClient.class.getName());
-        return getInstance().basicHttpParams().setupRegistry().supportHttps().setupThreadPool();
+        return getHttpsInstance(new ConnectionPoolConfiguration());
+    }
+
+    /**
+     * @param poolConfiguration sizing of the connection pool
+     * @return HTTPS instance (setup) of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getHttpsInstance(ConnectionPoolConfiguration poolConfiguration) {
+        log.debug("Constructing new HttpsInstance of {}", SimulityHttpClient.class.getName());
+        return builder().supportHttps().poolConfiguration(poolConfiguration).build();
+    }
+
+    /**
+     * @param protocol protocol spoken by the instance
+     * @return HTTPS instance (setup) of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getHttpsInstance(Protocol protocol) {
+        log.debug("Constructing new {} HttpsInstance of {}", protocol, SimulityHttpClient.class.getName());
+        return builder().supportHttps().protocol(protocol).build();
     }
 
     /**
      * @return Complete instance (setup) -- HTTP&HTTPS of the SimulityHttpClient
      */
     public static SimulityHttpClient getCompleteInstance() {
-        log.debug("Constructing new Complete (HTTP/HTTPS) Instance of " + SimulityHttpClient.class.getName());
-        return getInstance().basicHttpParams().setupRegistry().supportHttp().supportHttps().setupThreadPool();
+        return getCompleteInstance(new ConnectionPoolConfiguration());
+    }
+
+    /**
+     * @param poolConfiguration sizing of the connection pool
+     * @return Complete instance (setup) -- HTTP&HTTPS of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getCompleteInstance(ConnectionPoolConfiguration poolConfiguration) {
+        log.debug("Constructing new Complete (HTTP/HTTPS) Instance of {}", SimulityHttpClient.class.getName());
+        return builder().supportHttp().supportHttps().poolConfiguration(poolConfiguration).build();
     }
 
+    /**
+     * @param protocol protocol spoken by the instance
+     * @return Complete instance (setup) -- HTTP&HTTPS of the SimulityHttpClient
+     */
+    public static SimulityHttpClient getCompleteInstance(Protocol protocol) {
+        log.debug("Constructing new {} Complete (HTTP/HTTPS) Instance of {}", protocol, SimulityHttpClient.class.getName());
+        return builder().supportHttp().supportHttps().protocol(protocol).build();
+    }
+
+    /**
+     * @return Single threaded instance (setup) -- HTTP&HTTPS of the
+     * SimulityHttpClient, holding one connection of its own
+     */
     public static SimulityHttpClient getSingleInstance() {
-        log.debug("Constructed a new Single Complete (HTTP/HTTPS) Instance of " + SimulityHttpClient.class.getName());
-        return getInstance().basicHttpParams().setupRegistry().supportHttp().supportHttps().singleThreaded();
+        log.debug("Constructed a new Single Complete (HTTP/HTTPS) Instance of {}", SimulityHttpClient.class.getName());
+        return builder().supportHttp().supportHttps().singleThreaded().build();
+    }
+
+    /**
+     * @param poolConfiguration sizing of the connection pool, applied by
+     * {@link #setupThreadPool()}
+     * @return SimulityHttpClient with the pool configuration applied.
+     */
+    public SimulityHttpClient poolConfiguration(ConnectionPoolConfiguration poolConfiguration) {
+        log.debug("Pool configuration: {}", poolConfiguration);
+        _poolConfiguration = poolConfiguration;
+        return this;
+    }
+
+    /**
+     * @param executionMode threads on which asynchronous, submitted and
+     * invoked requests are run
+     * @return SimulityHttpClient with the execution mode applied.
+     */
+    public synchronized SimulityHttpClient executionMode(ExecutionMode executionMode) {
+        log.debug("Execution mode: {}", executionMode);
+        if (_executionMode != executionMode && _asyncExecutor != null) {
+            _asyncExecutor.shutdown();
+            _asyncExecutor = null;
+        }
+        _executionMode = executionMode;
+        return this;
+    }
+
+    /**
+     * In quiet hot path mode the per-call debug lines of the request builders,
+     * execute and the response readers are not written; instead every
+     * exchange is summarised on one line (method, URI, status, bytes and
+     * latency) at INFO level on the
+     * {@code com.simulity.server.client.http.simpleclient.SimulityHttpClient.exchange}
+     * logger.
+     *
+     * @param quietHotPath whether to summarise exchanges instead of tracing
+     * them
+     * @return SimulityHttpClient with the logging mode applied.
+     */
+    public SimulityHttpClient quietHotPath(boolean quietHotPath) {
+        log.debug("Quiet hot path: {}", quietHotPath);
+        _quietHotPath = quietHotPath;
+        return this;
+    }
+
+    /**
+     * In single-flight mode a GET or HEAD request that is identical (method,
+     * URI and headers) to one already in flight on this instance is not sent;
+     * it waits for and shares the response of the first, which is buffered.
+     * This keeps a burst of identical requests from taking a connection and a
+     * backend round trip each.
+     *
+     * @param singleFlight whether to coalesce identical concurrent requests
+     * @return SimulityHttpClient with the coalescing mode applied.
+     */
+    public SimulityHttpClient singleFlight(boolean singleFlight) {
+        log.debug("Single flight: {}", singleFlight);
+        _singleFlight = singleFlight ? new SingleFlight() : null;
+        return this;
+    }
+
+    /**
+     * Puts an adaptive limit on the requests in flight to each route in front
+     * of execution, so that callers are turned away (or queued with a
+     * deadline) once a backend slows down rather than piling up behind the
+     * connection pool and timing out together.
+     *
+     * @param configuration limit settings, or null to remove the limit
+     * @return SimulityHttpClient with the concurrency limit applied.
+     * @see ConcurrencyLimitConfiguration
+     */
+    public SimulityHttpClient concurrencyLimit(ConcurrencyLimitConfiguration configuration) {
+        log.debug("Concurrency limit: {}", configuration);
+        _concurrencyLimiter = configuration != null ? new ConcurrencyLimiter(configuration) : null;
+        return this;
+    }
+
+    /**
+     * @return current concurrency limit of every route used so far, empty
+     * when no limit is configured
+     */
+    public Map<HttpHost, Integer> getConcurrencyLimits() {
+        ConcurrencyLimiter concurrencyLimiter = _concurrencyLimiter;
+        if (concurrencyLimiter == null) {
+            return Collections.<HttpHost, Integer>emptyMap();
+        }
+        return concurrencyLimiter.getLimits();
+    }
+
+    /**
+     * Hedges idempotent requests to cut the tail latency caused by the odd
+     * slow response: when no response has arrived within a percentile of the
+     * recent times to response a second copy is sent, on another connection
+     * (and to another endpoint of a service), the first response wins and the
+     * other copy is aborted. A budget keeps the extra load to a fraction of
+     * the requests.
+     *
+     * @param configuration hedging settings, or null to stop hedging
+     * @return SimulityHttpClient with the hedging applied.
+     * @see HedgingConfiguration
+     */
+    public SimulityHttpClient hedging(HedgingConfiguration configuration) {
+        log.debug("Hedging: {}", configuration);
+        _hedger = configuration != null ? new Hedger(configuration) : null;
+        return this;
+    }
+
+    /**
+     * @return number of hedges sent, zero when hedging is off
+     */
+    public long getHedgeCount() {
+        Hedger hedger = _hedger;
+        return hedger != null ? hedger.getHedges() : 0;
+    }
+
+    /**
+     * Retries failed requests with jittered exponential backoff, honouring
+     * Retry-After and the idempotency of the request method, within a budget
+     * that keeps retries from turning an outage into a retry storm. While a
+     * retry configuration is set the Apache HttpClient makes no retries of
+     * its own.
+     *
+     * @param configuration retry settings, or null to stop retrying
+     * @return SimulityHttpClient with the retries applied.
+     * @see RetryConfiguration
+     */
+    public SimulityHttpClient retry(RetryConfiguration configuration) {
+        log.debug("Retry: {}", configuration);
+        _retrier = configuration != null ? new Retrier(configuration) : null;
+        return this;
+    }
+
+    /**
+     * @return number of retries made, zero when retrying is off
+     */
+    public long getRetryCount() {
+        Retrier retrier = _retrier;
+        return retrier != null ? retrier.getRetries() : 0;
     }
 
     /**
@@ -118,7 +448,7 @@ public class SimulityHttpClient {
     public SimulityHttpClient basicHttpParams() {
         log.debug("Setting up Basic HTTP Parameters.");
         _httpParams = new BasicHttpParams();
-        log.debug("Parameters setup: " + _httpParams);
+        log.debug("Parameters setup: {}", _httpParams);
         return this;
     }
 
@@ -128,7 +458,7 @@ public class SimulityHttpClient {
     public SimulityHttpClient setupRegistry() {
         log.debug("Setting up HttpRegistry.");
         _httpRegistry = new SchemeRegistry();
-        log.debug("HttpRegistry setup: " + _httpRegistry);
+        log.debug("HttpRegistry setup: {}", _httpRegistry);
         return this;
     }
 
@@ -137,8 +467,8 @@ public class SimulityHttpClient {
      */
     public SimulityHttpClient supportHttp() {
         log.debug("Staging support for HTTP Scheme.");
-        _httpScheme = new Scheme("http", 80, PlainSocketFactory.getSocketFactory());
-        log.debug("Http Scheme constructed: " + _httpScheme);
+        _httpScheme = new Scheme("http", 80, TimedSocketFactory.wrap(PlainSocketFactory.getSocketFactory()));
+        log.debug("Http Scheme constructed: {}", _httpScheme);
         log.debug("Adding HttScheme to Register.");
         Scheme get = _httpRegistry.get("http");
         if (get == null) {
@@ -155,11 +485,11 @@ public class SimulityHttpClient {
      * @return SimulityHttpClient with HTTPS support applied.
      */
     public SimulityHttpClient supportHttps() {
-        log.debug("Staging support for HTTP Scheme.");
-        _httpScheme = new Scheme("https", 443, SSLSocketFactory.getSocketFactory());
-        log.debug("Http Scheme constructed: " + _httpScheme);
+        log.debug("Staging support for HTTPS Scheme: {}", _tlsConfiguration);
+        _httpScheme = new Scheme("https", 443, TimedSocketFactory.wrap(_tlsConfiguration.socketFactory()));
+        log.debug("Http Scheme constructed: {}", _httpScheme);
         log.debug("Adding HttScheme to Register.");
-        Scheme get = _httpRegistry.get("http");
+        Scheme get = _httpRegistry.get("https");
         if (get == null) {
             _httpRegistry.register(_httpScheme);
             log.debug("HttpScheme has been registered.");
@@ -176,17 +506,126 @@ public class SimulityHttpClient {
      */
     public SimulityHttpClient setupThreadPool() {
         log.debug("Setting up ThreadPool.");
-        if (_connectionManager == null) {
-            log.debug("Constructing new PoolingClientConnectionManager.");
-            _connectionManager = new PoolingClientConnectionManager(_httpRegistry);
-            log.debug("PoolingClientConnectionManager constructed.");
+        SharedConnectionPool pool = _sharedPool.get();
+        if (pool == null) {
+            log.debug("Acquiring shared PoolingClientConnectionManager.");
+            pool = SharedConnectionPool.acquire(_httpRegistry, _poolConfiguration, _tlsConfiguration, _httpParams);
+            if (_sharedPool.compareAndSet(null, pool)) {
+                _connectionManager = pool.getConnectionManager();
+                _httpClient = null;
+                log.debug("PoolingClientConnectionManager acquired.");
+                if (_metrics != null) {
+                    // Unregistered by destroy().
+                    _metrics.register();
+                }
+                ConnectionWarmer warmer = pool.getWarmer();
+                for (Map.Entry<HttpHost, Integer> entry : _prewarmed.entrySet()) {
+                    log.debug("Warming {} connections to {} again.", entry.getValue(), entry.getKey());
+                    warmer.warmLater(warmer.route(entry.getKey()), entry.getValue());
+                }
+            } else {
+                pool.release();
+            }
         } else {
             log.debug("Using connection manager pre-defined by previous invocation.");
         }
-        log.debug("ThreadPool setup.");
+        synchronized (this) {
+            if (_transport == null) {
+                // Shut down by destroy().
+                _transport = _protocol.newTransport(_httpParams, _tlsConfiguration);
+            }
+        }
+        if (_httpParams != null) {
+            HttpClientParams.setConnectionManagerTimeout(_httpParams, _poolConfiguration.getLeaseTimeout());
+        }
+        log.debug("ThreadPool setup: {}", _poolConfiguration);
         return this;
     }
-    
+
+    /**
+     * Registers a logical service: requests whose URL has the service name as
+     * its host are sent to one of the endpoints, chosen by the power of two
+     * choices on live latency and requests in flight (see
+     * {@link ServiceEndpoint}). The path and query of the URL are kept; the
+     * scheme and port are those of the endpoint. Registering a service again
+     * replaces its endpoints, keeping the figures of those it still has.
+     *
+     * @param name service name, used in place of a host name in request URLs
+     * @param endpoints replicas of the service
+     * @return SimulityHttpClient with the service applied.
+     */
+    public SimulityHttpClient service(String name, HttpHost... endpoints) {
+        synchronized (this) {
+            if (_loadBalancer == null) {
+                _loadBalancer = new LoadBalancer();
+            }
+        }
+        _loadBalancer.register(name, Arrays.asList(endpoints));
+        log.debug("Service {} registered with endpoints {}", name, Arrays.toString(endpoints));
+        return this;
+    }
+
+    /**
+     * @param name service name
+     * @return the endpoints of the service with their live figures, empty
+     * when the service is not registered
+     */
+    public List<ServiceEndpoint> getServiceEndpoints(String name) {
+        LoadBalancer loadBalancer = _loadBalancer;
+        if (loadBalancer == null) {
+            return Collections.<ServiceEndpoint>emptyList();
+        }
+        return loadBalancer.endpoints(name);
+    }
+
+    /**
+     * Opens connections to a plain HTTP host ahead of demand.
+     *
+     * @param host host name
+     * @param port port (as used in the request URL)
+     * @param connections number of connections to hold open
+     * @return number of connections opened
+     * @throws IOException if a connection could not be opened
+     * @see #prewarm(HttpHost, int)
+     */
+    public int prewarm(String host, int port, int connections) throws IOException {
+        return prewarm(new HttpHost(host, port, "http"), connections);
+    }
+
+    /**
+     * Opens connections to a host ahead of demand and puts them in the pool
+     * idle, so the first requests do not pay for the TCP connect and TLS
+     * handshake. Connections already open count towards the number, which is
+     * capped by the route limit of the pool. The host is remembered and
+     * warmed again, in the background, whenever {@link #setupThreadPool()}
+     * acquires a new pool. See
+     * {@link ConnectionPoolConfiguration#minIdlePerRoute(int)} to keep routes
+     * warm automatically.
+     *
+     * @param target host (name, port and scheme)
+     * @param connections number of connections to hold open
+     * @return number of connections opened
+     * @throws IOException if a connection could not be opened
+     * @throws IllegalStateException if the instance has no connection pool
+     */
+    public int prewarm(HttpHost target, int connections) throws IOException {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Connections must be positive: " + connections);
+        }
+        SharedConnectionPool pool = _sharedPool.get();
+        if (pool == null) {
+            throw new IllegalStateException("Connections can only be warmed in a pool, see setupThreadPool()");
+        }
+        _prewarmed.put(target, connections);
+        log.debug("Warming {} connections to {}", connections, target);
+        ConnectionWarmer warmer = pool.getWarmer();
+        return warmer.warm(warmer.route(target), connections);
+    }
+
+    /**
+     * @return SimulityHttpClient without a connection manager, holding a
+     * single connection of its own
+     */
     public SimulityHttpClient singleThreaded() {
         log.debug("Invoking destroy to ensure that solution is not using ThreadPool.");
         destroy();
@@ -199,23 +638,70 @@ public class SimulityHttpClient {
      * destination.
      */
     public HttpClient getClient() {
+        HttpClient client = _httpClient;
+        if (client != null) {
+            if (traceHotPath()) {
+                log.debug("Using member found HttpClient: {}", client);
+            }
+            return client;
+        }
         log.debug("Client Requested.");
-        if (_httpClient == null || _connectionManager == null) {
-            log.debug("Constructing new HttpClient or ConnectionManager as member was null.");
-            if (_connectionManager == null) {
-                log.debug("Connection manager was not present, using single-threaded model.");
-                _httpClient = new DefaultHttpClient(_httpParams);
-                log.debug("HttpClient created: " + _httpClient);
-            } else {
-                log.debug("Connection manager was present, using ThreadPool model.");
-                _httpClient = new DefaultHttpClient(_connectionManager, _httpParams);
-                log.debug("HttpClient created: " + _httpClient);
+        synchronized (this) {
+            if (_httpClient == null) {
+                log.debug("Constructing new HttpClient as member was null.");
+                DefaultHttpClient defaultClient;
+                if (_connectionManager == null) {
+                    log.debug("Connection manager was not present, using single-threaded model.");
+                    defaultClient = new DefaultHttpClient(_httpParams);
+                } else {
+                    log.debug("Connection manager was present, using ThreadPool model.");
+                    ClientConnectionManager connectionManager = _connectionManager;
+                    if (_metrics != null) {
+                        connectionManager = new InstrumentedConnectionManager(connectionManager, _metrics);
+                    }
+                    defaultClient = new DefaultHttpClient(connectionManager, _httpParams);
+                }
+                if (_compression) {
+                    log.debug("Negotiating compressed responses.");
+                    defaultClient.addRequestInterceptor(new RequestAcceptEncoding());
+                    defaultClient.addResponseInterceptor(new ResponseContentEncoding() {
+                        @Override
+                        public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                            HttpEntity entity = response.getEntity();
+                            super.process(response, context);
+                            if (response.getEntity() != entity) {
+                                // The headers describe the encoded body, which is no longer what is read.
+                                response.removeHeaders("Content-Length");
+                                response.removeHeaders("Content-Encoding");
+                                response.removeHeaders("Content-MD5");
+                            }
+                        }
+                    });
+                }
+                defaultClient.addRequestInterceptor(LoadBalancer.ENDPOINT_HOST);
+                final HttpRequestRetryHandler retryHandler = defaultClient.getHttpRequestRetryHandler();
+                defaultClient.setHttpRequestRetryHandler(new HttpRequestRetryHandler() {
+                    @Override
+                    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+                        // Retries are left to the retry configuration when there is one.
+                        return _retrier == null && retryHandler.retryRequest(exception, executionCount, context);
+                    }
+                });
+                client = defaultClient;
+                if (_cacheStorage != null) {
+                    log.debug("Caching responses: {}", _cacheConfiguration);
+                    client = new CachingHttpClient(defaultClient, _cacheConfiguration.isOffHeap()
+                            ? new OffHeapResourceFactory() : new HeapResourceFactory(),
+                            _cacheStorage, _cacheConfiguration.toCacheConfig());
+                }
+                _httpClient = client;
+                if (_metrics != null) {
+                    _metrics.setConnectionManager(_connectionManager);
+                }
+                log.debug("HttpClient created: {}", _httpClient);
             }
-
-        } else {
-            log.debug("Using member found HttpClient: " + _httpClient);
+            return _httpClient;
         }
-        return _httpClient;
     }
 
     /**
@@ -225,7 +711,9 @@ public class SimulityHttpClient {
      * @return built object
      */
     public HttpGet get(String url) {
-        log.debug("Http GET construction request for URL: " + url);
+        if (traceHotPath()) {
+            log.debug("Http GET construction request for URL: {}", url);
+        }
         return new HttpGet(url);
     }
 
@@ -233,12 +721,26 @@ public class SimulityHttpClient {
      * Make a HTTP POST request (construction only)
      *
      * @param url request url
+     * @param parameters form fields sent as the body
      * @return built object
      */
     public HttpPost post(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException {
-        log.debug("Http POST construction request for URL: " + url);
+        return post(url, RequestBodyEncoder.form(parameters));
+    }
+
+    /**
+     * Make a HTTP POST request (construction only)
+     *
+     * @param url request url
+     * @param body request body, see {@link RequestBodyEncoder}
+     * @return built object
+     */
+    public HttpPost post(String url, HttpEntity body) {
+        if (traceHotPath()) {
+            log.debug("Http POST construction request for URL: {}", url);
+        }
         HttpPost httpPost = new HttpPost(url);
-        httpPost.setEntity(new UrlEncodedFormEntity(parameters));
+        httpPost.setEntity(requestEntity(body));
         return httpPost;
     }
 
@@ -249,61 +751,508 @@ public class SimulityHttpClient {
      * @return built object
      */
     public HttpDelete delete(String url) {
-        log.debug("Http DELETE construction request for URL: " + url);
+        if (traceHotPath()) {
+            log.debug("Http DELETE construction request for URL: {}", url);
+        }
         return new HttpDelete(url);
     }
 
     /**
-     * Execute (send) the request to the destination
+     * Execute (send) the request to the destination. In quiet hot path mode a
+     * single summary line is logged once the response body has been read, and
+     * with metrics enabled the timings of the exchange are recorded. In
+     * single-flight mode identical concurrent GET and HEAD requests share one
+     * exchange. With a concurrency limit a request over the limit of its route
+     * fails with a {@link ConcurrencyLimitExceededException}, at once or once
+     * the queue timeout has passed. With hedging on, an idempotent request
+     * still unanswered after the hedge delay is sent again and the first
+     * response wins. With retrying on, failed attempts are retried as set out
+     * in {@link RetryConfiguration}.
      *
      * @param request request (HTTP) that should be pre-constructed
      * @return HttpResponse data from the request
      * @throws IOException
+     * @see #quietHotPath(boolean)
+     * @see #singleFlight(boolean)
+     * @see #concurrencyLimit(ConcurrencyLimitConfiguration)
+     * @see #hedging(HedgingConfiguration)
+     * @see #retry(RetryConfiguration)
+     * @see #getMetrics()
      */
     public HttpResponse execute(HttpUriRequest request) throws IOException {
-        log.debug("Http Execution request for " + request.getURI().toString());
-        return _httpClient.execute(request);
+        SingleFlight singleFlight = _singleFlight;
+        if (singleFlight != null && SingleFlight.isCoalescable(request)) {
+            return singleFlight.execute(this, request);
+        }
+        return executeExchange(request);
     }
-    
+
+    /**
+     * @param request request (HTTP) that should be pre-constructed
+     * @return HttpResponse data from the request, sent on its own (and
+     * retried when retrying is on)
+     * @throws IOException
+     */
+    HttpResponse executeExchange(HttpUriRequest request) throws IOException {
+        Retrier retrier = _retrier;
+        if (retrier != null) {
+            return retrier.execute(this, request);
+        }
+        return attempt(request);
+    }
+
+    /**
+     * @param request request (HTTP) that should be pre-constructed
+     * @return HttpResponse data from one attempt of the request, hedged when
+     * hedging is on
+     * @throws IOException
+     */
+    HttpResponse attempt(HttpUriRequest request) throws IOException {
+        Hedger hedger = _hedger;
+        if (hedger != null && hedger.isHedgeable(request)) {
+            return hedger.execute(this, request, asyncExecutor());
+        }
+        return exchange(request);
+    }
+
+    /**
+     * @param request request (HTTP) that should be pre-constructed
+     * @return HttpResponse data from a single exchange of the request
+     * @throws IOException
+     */
+    HttpResponse exchange(HttpUriRequest request) throws IOException {
+        ClientMetrics metrics = _metrics;
+        if (!_quietHotPath && metrics == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Http Execution request for {}", request.getURI());
+            }
+            return send(request);
+        }
+        if (traceHotPath()) {
+            log.debug("Http Execution request for {}", request.getURI());
+        }
+        Exchange exchange = new Exchange(request, metrics, _quietHotPath);
+        ClientMetrics.CURRENT.set(metrics);
+        try {
+            return exchange.received(send(request));
+        } catch (IOException ex) {
+            exchange.failed(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            exchange.failed(ex);
+            throw ex;
+        } finally {
+            ClientMetrics.CURRENT.remove();
+        }
+    }
+
+    /**
+     * @return the response from the transport of this client, or its Apache
+     * HttpClient, once the request is within the concurrency limit of its
+     * route
+     */
+    private HttpResponse send(HttpUriRequest request) throws IOException {
+        ConcurrencyLimiter concurrencyLimiter = _concurrencyLimiter;
+        if (concurrencyLimiter != null) {
+            ConcurrencyLimiter.Limit limit = concurrencyLimiter.limitOf(request.getURI());
+            if (limit != null) {
+                return send(limit, request);
+            }
+        }
+        return dispatch(request);
+    }
+
+    /**
+     * @return the response, with the time it took and whether the backend
+     * shed load fed back to the limit
+     */
+    private HttpResponse send(ConcurrencyLimiter.Limit limit, HttpUriRequest request) throws IOException {
+        long start = limit.acquire();
+        boolean dropped = true;
+        try {
+            HttpResponse response = dispatch(request);
+            int status = response.getStatusLine().getStatusCode();
+            dropped = status == 429 || status == 503 || status == 504;
+            return response;
+        } finally {
+            limit.release(start, dropped);
+        }
+    }
+
+    private HttpResponse dispatch(HttpUriRequest request) throws IOException {
+        LoadBalancer loadBalancer = _loadBalancer;
+        if (loadBalancer != null) {
+            ServiceEndpoint endpoint = loadBalancer.choose(request.getURI().getHost());
+            if (endpoint != null) {
+                return send(endpoint, request);
+            }
+        }
+        HttpTransport transport = _transport;
+        if (transport == null) {
+            return getClient().execute(request);
+        }
+        return send(transport, request);
+    }
+
+    private HttpResponse send(HttpTransport transport, HttpUriRequest request) throws IOException {
+        if (!_compression) {
+            return transport.execute(request);
+        }
+        ContentCoding.accept(request);
+        return ContentCoding.decode(transport.execute(request));
+    }
+
+    /**
+     * @return the response from the endpoint of a service, whose figures are
+     * updated with the outcome
+     */
+    private HttpResponse send(ServiceEndpoint endpoint, HttpUriRequest request) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Sending request for {} to {}", request.getURI(), endpoint);
+        }
+        long start = System.nanoTime();
+        endpoint.started();
+        boolean completed = false;
+        try {
+            HttpResponse response;
+            HttpTransport transport = _transport;
+            if (transport == null) {
+                HttpContext context = new BasicHttpContext();
+                context.setAttribute(LoadBalancer.ENDPOINT, endpoint.getHost());
+                response = getClient().execute(endpoint.getHost(), request, context);
+            } else {
+                response = send(transport, retarget(request, endpoint.getHost()));
+            }
+            if (response.getStatusLine().getStatusCode() < 500) {
+                endpoint.completed(System.nanoTime() - start);
+                completed = true;
+            }
+            return response;
+        } finally {
+            if (!completed) {
+                endpoint.failed(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the request addressed to the host, for transports
+     * that take the target from the request URI
+     */
+    private static HttpUriRequest retarget(HttpUriRequest request, HttpHost target) throws IOException {
+        try {
+            URI uri = URIUtils.rewriteURI(request.getURI(), target);
+            RequestWrapper wrapper = request instanceof HttpEntityEnclosingRequest
+                    ? new EntityEnclosingRequestWrapper((HttpEntityEnclosingRequest) request)
+                    : new RequestWrapper(request);
+            wrapper.setURI(uri);
+            return wrapper;
+        } catch (URISyntaxException ex) {
+            throw new ClientProtocolException(ex);
+        } catch (ProtocolException ex) {
+            throw new ClientProtocolException(ex);
+        }
+    }
+
+    /**
+     * @return the metrics of this client, or null when it was built without
+     * {@link Builder#metrics(String)}
+     */
+    public ClientMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Execute (send) the request to the destination without blocking the
+     * calling thread. The request is run on the worker threads of this client
+     * and the response entity is buffered before the future completes, so the
+     * pooled connection is released as soon as the exchange is done.
+     * Cancelling the future aborts the request.
+     *
+     * @param request request (HTTP) that should be pre-constructed
+     * @return HttpResponse data from the request, with a buffered entity
+     */
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        return executeAsync(request, asyncExecutor());
+    }
+
+    /**
+     * Execute (send) the request to the destination on the given executor.
+     *
+     * @param request request (HTTP) that should be pre-constructed
+     * @param executor executor that runs the (blocking) exchange
+     * @return HttpResponse data from the request, with a buffered entity
+     * @see #executeAsync(HttpUriRequest)
+     */
+    public CompletableFuture<HttpResponse> executeAsync(final HttpUriRequest request, Executor executor) {
+        if (traceHotPath()) {
+            log.debug("Http Asynchronous execution request for {}", request.getURI());
+        }
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                request.abort();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    try {
+                        future.complete(ResponseBodyReader.buffer(execute(request)));
+                    } catch (Exception ex) {
+                        request.abort();
+                        future.completeExceptionally(ex);
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Submit the request for execution on the threads of the execution mode.
+     *
+     * @param request request (HTTP) that should be pre-constructed
+     * @return HttpResponse data from the request, with a buffered entity
+     * @see #executionMode(ExecutionMode)
+     */
+    public Future<HttpResponse> submit(HttpUriRequest request) {
+        return executeAsync(request);
+    }
+
+    /**
+     * Execute all of the requests on the threads of the execution mode and
+     * wait for them to complete.
+     *
+     * @param requests requests (HTTP) that should be pre-constructed
+     * @return completed futures holding the responses (with buffered entities)
+     * in the order of the requests
+     * @throws InterruptedException if interrupted while waiting, in which
+     * case the outstanding requests are cancelled
+     */
+    public List<Future<HttpResponse>> invokeAll(Collection<? extends HttpUriRequest> requests) throws InterruptedException {
+        log.debug("Http execution request for {} requests.", requests.size());
+        List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>(requests.size());
+        for (HttpUriRequest request : requests) {
+            futures.add(submit(request));
+        }
+        try {
+            for (Future<HttpResponse> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    // Reported through the future.
+                }
+            }
+        } catch (InterruptedException ex) {
+            for (Future<HttpResponse> future : futures) {
+                future.cancel(true);
+            }
+            throw ex;
+        }
+        return futures;
+    }
+
+    /**
+     * Execute all of the requests with a bounded number in flight and wait
+     * for them to complete. The requests are run on the threads of the
+     * execution mode, at most {@link BatchOptions#concurrency(int)} at a time
+     * and {@link BatchOptions#maxPerHost(int)} to any one host, with hosts
+     * served in turn. A client without a connection pool runs the batch one
+     * request at a time.
+     *
+     * @param requests requests (HTTP) that should be pre-constructed
+     * @param options limits of the batch
+     * @return the outcome of every request (responses with buffered
+     * entities, or failures) in the order of the requests
+     * @throws InterruptedException if interrupted while waiting, in which
+     * case the outstanding requests are aborted
+     */
+    public List<BatchResult> executeBatch(List<? extends HttpUriRequest> requests, BatchOptions options) throws InterruptedException {
+        log.debug("Http batch execution request for {} requests: {}", requests.size(), options);
+        int concurrency = options.getConcurrency() > 0 ? options.getConcurrency() : _poolConfiguration.getMaxTotal();
+        int maxPerHost = options.getMaxPerHost() > 0 ? options.getMaxPerHost() : _poolConfiguration.getDefaultMaxPerRoute();
+        if (_connectionManager == null) {
+            concurrency = 1;
+        }
+        return new Batch(this, requests, concurrency, maxPerHost).run(asyncExecutor());
+    }
+
+    /**
+     * Execute idempotent requests with HTTP/1.1 pipelining: the requests to
+     * each host are written back to back on one keep-alive connection of the
+     * pool, at most depth requests ahead of the responses, which are read in
+     * order. This saves a round trip per request (and a connection per
+     * concurrent request) for bursts of small requests to a single backend.
+     * When the server closes the connection early, or it fails, the requests
+     * that have not been answered are executed again one by one. With an
+     * HTTP/2 transport, or requests to a load balanced service, the requests
+     * are sent concurrently instead.
+     * <p>
+     * Pipelined requests are written straight to the connection, so they
+     * bypass what {@link #execute(HttpUriRequest)} does per request: the
+     * concurrency limit, request metrics and exchange logging (connection
+     * leases are still counted), retries and their budget, the response
+     * cache, single-flight, hedging and the negotiation of compressed
+     * responses. Requests executed one by one after a pipeline fails, and all
+     * requests sent concurrently instead, go through execute as usual.
+     *
+     * @param requests GET, HEAD, DELETE or OPTIONS requests without a body,
+     * such as those of {@link #get(String)} and {@link #delete(String)}
+     * @param depth maximum number of requests written ahead of the responses
+     * @return the outcome of every request (responses with buffered
+     * entities, or failures) in the order of the requests
+     * @throws InterruptedException if interrupted while waiting for a
+     * connection
+     */
+    public List<BatchResult> executePipelined(List<? extends HttpUriRequest> requests, int depth) throws InterruptedException {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be positive: " + depth);
+        }
+        for (HttpUriRequest request : requests) {
+            if (!Pipeline.isPipelinable(request)) {
+                throw new IllegalArgumentException("Request cannot be pipelined: " + request.getRequestLine());
+            }
+        }
+        log.debug("Http pipelined execution request for {} requests, depth {}.", requests.size(), depth);
+        if (_transport != null) {
+            // The transport multiplexes the requests over its own connections.
+            return executeBatch(requests, new BatchOptions().concurrency(depth).maxPerHost(depth));
+        }
+        LoadBalancer loadBalancer = _loadBalancer;
+        if (loadBalancer != null) {
+            for (HttpUriRequest request : requests) {
+                if (loadBalancer.choose(request.getURI().getHost()) != null) {
+                    // Balanced per request rather than pinned to one connection.
+                    return executeBatch(requests, new BatchOptions().concurrency(depth).maxPerHost(depth));
+                }
+            }
+        }
+        return new Pipeline(this, getClient().getConnectionManager(), _httpParams, depth).run(requests);
+    }
+
+    /**
+     * @return executor running the asynchronous requests
+     */
+    private synchronized ExecutorService asyncExecutor() {
+        if (_asyncExecutor == null) {
+            log.debug("Constructing asynchronous executor: {}", _executionMode);
+            _asyncExecutor = _executionMode.newExecutor(_poolConfiguration.getMaxTotal());
+        }
+        return _asyncExecutor;
+    }
+
     /**
      * PUT
      * 
      * @param url request url
+     * @param parameters form fields sent as the body
      * @return built object
      */
     public HttpPut put(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException{
+        return put(url, RequestBodyEncoder.form(parameters));
+    }
+
+    /**
+     * PUT
+     *
+     * @param url request url
+     * @param body request body, see {@link RequestBodyEncoder}
+     * @return built object
+     */
+    public HttpPut put(String url, HttpEntity body) {
+        if (traceHotPath()) {
+            log.debug("Http PUT construction request for URL: {}", url);
+        }
         HttpPut httpPut = new HttpPut(url);
-        httpPut.setEntity(new UrlEncodedFormEntity(parameters));
-        log.debug("Http PUT construction request for URL: " + url);
-        return new HttpPut(url);
+        httpPut.setEntity(requestEntity(body));
+        return httpPut;
     }
     
      /**
      * PATCH
      * 
      * @param url request url
+     * @param parameters form fields sent as the body
      * @return built object
      */
     public HttpPatch patch(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException{
+        return patch(url, RequestBodyEncoder.form(parameters));
+    }
+
+    /**
+     * PATCH
+     *
+     * @param url request url
+     * @param body request body, see {@link RequestBodyEncoder}
+     * @return built object
+     */
+    public HttpPatch patch(String url, HttpEntity body) {
+        if (traceHotPath()) {
+            log.debug("Http PATCH construction request for URL: {}", url);
+        }
         HttpPatch httpPatch = new HttpPatch(url);
-        httpPatch.setEntity(new UrlEncodedFormEntity(parameters));
-        log.debug("Http PATCH construction request for URL: " + url);
-        return new HttpPatch(url);
+        httpPatch.setEntity(requestEntity(body));
+        return httpPatch;
+    }
+
+    /**
+     * @param entity body of a request built by this instance
+     * @return the body, gzip compressed when request bodies are compressed
+     * @see Builder#compressRequestBodies(boolean)
+     */
+    private HttpEntity requestEntity(HttpEntity entity) {
+        if (_compressRequestBodies && !ContentCoding.isEncoded(entity.getContentEncoding())) {
+            return new GzipCompressingEntity(entity);
+        }
+        return entity;
     }
 
     /**
-     * Destroys the connection manager.
+     * Destroys the connection manager. A pooled instance gives up its
+     * reference to the shared pool, which is shut down once no other instance
+     * uses it.
      */
     public void destroy() {
+        synchronized (this) {
+            if (_asyncExecutor != null) {
+                log.debug("Shutting down asynchronous executor.");
+                _asyncExecutor.shutdown();
+                _asyncExecutor = null;
+            }
+        }
+        HttpTransport transport = _transport;
+        if (transport != null) {
+            log.debug("Shutting down transport.");
+            transport.shutdown();
+            _transport = null;
+        }
         log.debug("Destroying connection manager.");
-        if (_connectionManager == null) {
-            log.debug("Connection manager has already been destroyed.");
-        } else {
-            _connectionManager.shutdown();
+        SharedConnectionPool pool = _sharedPool.getAndSet(null);
+        HttpClient client = _httpClient;
+        if (pool != null) {
+            pool.release();
+            log.debug("Connection manager released.");
+        } else if (client != null) {
+            client.getConnectionManager().shutdown();
             log.debug("Connection manager destroyed.");
+        } else {
+            log.debug("Connection manager has already been destroyed.");
         }
         log.debug("Destroying connection manager references.");
         _connectionManager = null;
+        _httpClient = null;
+        if (_metrics != null) {
+            _metrics.setConnectionManager(null);
+            _metrics.unregister();
+        }
         log.debug("Connection manager references destroyed.");
 
     }
@@ -314,7 +1263,8 @@ public class SimulityHttpClient {
      */
     ////////////////////////////////////////////////////////////////////////////
     /**
-     * Conversion of the response data into a String
+     * Conversion of the response data into a String, decoded with the charset
+     * of the response (UTF-8 when the response does not declare one).
      *
      * @param response Response data from the execute call
      * @param request the original request (for abortions)
@@ -322,155 +1272,662 @@ public class SimulityHttpClient {
      * @throws IOException If the request is still in use (bad thread handling)
      */
     public String responseToString(HttpResponse response, HttpUriRequest request) throws IOException {
-        log.debug("Request for entity stringify for request " + request.getURI().toString());
-        String returnString = "";
+        if (traceHotPath()) {
+            log.debug("Request for entity stringify for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return "";
+        }
+        try {
+            return ResponseBodyReader.toString(entity);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Conversion of the response data into bytes
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @return The body of the response
+     * @throws IOException If the request is still in use (bad thread handling)
+     */
+    public byte[] responseToBytes(HttpResponse response, HttpUriRequest request) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for entity bytes for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new byte[0];
+        }
+        try {
+            return ResponseBodyReader.toByteArray(entity);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Conversion of the response data into a ByteBuffer
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @return The body of the response
+     * @throws IOException If the request is still in use (bad thread handling)
+     */
+    public ByteBuffer responseToByteBuffer(HttpResponse response, HttpUriRequest request) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for entity buffer for request {}", request.getURI());
+        }
         HttpEntity entity = response.getEntity();
-        if (entity != null) {
+        if (entity == null) {
+            return ByteBuffer.allocate(0);
+        }
+        try {
+            return ResponseBodyReader.toByteBuffer(entity);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Passes the response data to the handler as it is read, without holding
+     * the whole body in memory.
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @param handler receiver of the response data
+     * @return number of bytes read
+     * @throws IOException If the request is still in use (bad thread handling)
+     * or the handler failed
+     */
+    public long streamResponse(HttpResponse response, HttpUriRequest request, ResponseBodyReader.ChunkHandler handler) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for entity stream for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return 0;
+        }
+        try {
+            return ResponseBodyReader.stream(entity, handler);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Binds the JSON response body as it is read, without building it as a
+     * string first.
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @param type type to bind the body to
+     * @param <T> type of the result
+     * @return the body, or null when it is empty
+     * @throws IOException If the request is still in use (bad thread handling)
+     * or the body is not valid JSON for the type
+     */
+    public <T> T responseAs(HttpResponse response, HttpUriRequest request, Class<T> type) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for JSON entity for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return null;
+        }
+        try {
+            return JsonResponseReader.read(entity, _objectMapper, type);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Binds the JSON response body as it is read, for generic types such as
+     * {@code new TypeReference<List<Profile>>() {}}.
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @param type type to bind the body to
+     * @param <T> type of the result
+     * @return the body, or null when it is empty
+     * @throws IOException If the request is still in use (bad thread handling)
+     * or the body is not valid JSON for the type
+     */
+    public <T> T responseAs(HttpResponse response, HttpUriRequest request, TypeReference<T> type) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for JSON entity for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return null;
+        }
+        try {
+            return JsonResponseReader.read(entity, _objectMapper, type);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Passes the elements of a JSON array response to the handler as they
+     * are parsed, holding a single element in memory at a time.
+     *
+     * @param response Response data from the execute call
+     * @param request the original request (for abortions)
+     * @param elementType type to bind each element to
+     * @param handler receiver of the elements
+     * @param <T> type of the elements
+     * @return number of elements read
+     * @throws IOException If the request is still in use (bad thread handling),
+     * the body is not a JSON array of the type or the handler failed
+     */
+    public <T> long streamJsonArray(HttpResponse response, HttpUriRequest request, Class<T> elementType,
+            JsonResponseReader.ElementHandler<? super T> handler) throws IOException {
+        if (traceHotPath()) {
+            log.debug("Request for JSON array stream for request {}", request.getURI());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return 0;
+        }
+        try {
+            return JsonResponseReader.streamArray(entity, _objectMapper, elementType, handler);
+        } catch (IOException ex) {
+            throw readFailed(ex);
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        }
+    }
+
+    /**
+     * Downloads the response body to a file, through
+     * {@link FileChannel#transferFrom} so the heap used does not grow with the
+     * size of the body. When the file already holds part of the body a GET is
+     * sent with a Range for the rest: a 206 response is appended to the file,
+     * any other success replaces it. The request bypasses single-flight so the
+     * body is never held in memory, and asks for the identity coding so the
+     * file holds the bytes that ranges refer to.
+     *
+     * @param request request (HTTP) that should be pre-constructed, a Range
+     * header already present is left alone
+     * @param target file to write, created when it does not exist
+     * @return size of the file once the download is complete
+     * @throws HttpResponseException if the server did not answer with a
+     * success status
+     * @throws IOException if the exchange or the file failed
+     */
+    public long downloadTo(HttpUriRequest request, Path target) throws IOException {
+        long existing = Files.isRegularFile(target) ? Files.size(target) : 0;
+        boolean resume = existing > 0 && "GET".equals(request.getMethod()) && !request.containsHeader("Range");
+        if (resume) {
+            log.debug("Resuming download of {} from byte {}", request.getURI(), existing);
+            request.setHeader("Range", "bytes=" + existing + "-");
+        }
+        if (_compression && !request.containsHeader("Accept-Encoding")) {
+            // Ranges of an encoded body cannot be appended to the decoded file.
+            request.setHeader("Accept-Encoding", "identity");
+        }
+        HttpResponse response = executeExchange(request);
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        long position;
+        if (resume && status == HttpStatus.SC_PARTIAL_CONTENT && contentRangeStart(response) == existing) {
+            position = existing;
+        } else if (resume && status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && contentRangeLength(response) == existing) {
+            EntityUtils.consume(entity);
+            return existing;
+        } else if (status >= 200 && status < 300 && status != HttpStatus.SC_PARTIAL_CONTENT) {
+            position = 0;
+        } else {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(status, "Download of " + request.getURI() + " failed: " + response.getStatusLine());
+        }
+        FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(position);
+            if (entity == null) {
+                return position;
+            }
             InputStream content = entity.getContent();
             try {
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(content));
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    log.debug("Response Data (line): " + line);
-                    returnString += line;
+                ReadableByteChannel source = Channels.newChannel(content);
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, DOWNLOAD_TRANSFER_SIZE)) > 0) {
+                    position += transferred;
                 }
-
-            } catch (IOException ex) {
-                /*
-                 * According to Apache, the connection will be released back to
-                 * the connection manager automatically.
-                 */
-                log.error("This request will be released. Please revise setup.", ex);
-                throw ex;
-            } catch (RuntimeException ex) {
-                /*
-                 * In case of an unexpected (runtime) exception, the HttpRequest
-                 * (which should be provided in the argvs) should be aborted,
-                 * however it would be good practice to capture the event and
-                 * shutdown the underlying connection so that it can be released
-                 * back to the connection manager.
-                 */
-                log.error("Aborting request: " + request.getURI().toString());
-                request.abort();
-                log.error("Request aborted.");
-                log.error("This request will be released on a best-attempt effort, "
-                        + "therefore, it would be pragmatic to ensure that this does "
-                        + "not happen too often.", ex);
-                throw ex;
             } finally {
-                /*
-                 * Upon closure of the InputStream, the connection manager will
-                 * free the connection.
-                 */
-                log.debug("Reading completed; closing connection content stream.");
                 content.close();
             }
+            return position;
+        } catch (RuntimeException ex) {
+            throw readFailed(ex, request);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return first byte position of a {@code bytes a-b/n} Content-Range, or
+     * -1
+     */
+    private static long contentRangeStart(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Range");
+        if (header == null || !header.getValue().startsWith("bytes ")) {
+            return -1;
+        }
+        String value = header.getValue();
+        int dash = value.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(value.substring(6, dash).trim());
+        } catch (NumberFormatException ex) {
+            return -1;
         }
+    }
+
+    /**
+     * @return complete length of a Content-Range, or -1 when it is unknown
+     */
+    private static long contentRangeLength(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Range");
+        if (header == null) {
+            return -1;
+        }
+        String value = header.getValue();
+        int slash = value.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(value.substring(slash + 1).trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return whether the per-call debug lines of the hot path are written
+     */
+    private boolean traceHotPath() {
+        return !_quietHotPath && log.isDebugEnabled();
+    }
+
+    private IOException readFailed(IOException ex) {
+        /*
+         * According to Apache, the connection will be released back to the
+         * connection manager automatically.
+         */
+        log.error("This request will be released. Please revise setup.", ex);
+        return ex;
+    }
+
+    private RuntimeException readFailed(RuntimeException ex, HttpUriRequest request) {
+        /*
+         * In case of an unexpected (runtime) exception, the HttpRequest (which
+         * should be provided in the argvs) should be aborted, however it would
+         * be good practice to capture the event and shutdown the underlying
+         * connection so that it can be released back to the connection
+         * manager.
+         */
+        log.error("Aborting request: {}", request.getURI());
+        request.abort();
+        log.error("Request aborted.");
+        log.error("This request will be released on a best-attempt effort, "
+                + "therefore, it would be pragmatic to ensure that this does "
+                + "not happen too often.", ex);
+        return ex;
+    }
 
-        return returnString;
+    /**
+     * Holder of the instance behind the simple*Request helpers: a pooled
+     * HTTP&HTTPS instance whose keep-alive connections are reused between
+     * calls and closed after a minute of idleness. It lives as long as the
+     * class loader.
+     */
+    private static class SimpleInstanceHolder {
+
+        private static final SimulityHttpClient INSTANCE = builder().supportHttp().supportHttps()
+                .poolConfiguration(new ConnectionPoolConfiguration().idleTimeout(60, TimeUnit.SECONDS))
+                .build();
+    }
+
+    /**
+     * @return the pooled instance used by the simple*Request helpers
+     */
+    static SimulityHttpClient getSimpleInstance() {
+        return SimpleInstanceHolder.INSTANCE;
     }
 
     /**
      * Sends a simple HTTP GET request to the provided URL and returns a String
-     * of the response. This is NOT thread safe. Do not use in production,
-     * unless you are happy with being able to only support a single connection
-     * at a time.
+     * of the response. The request is sent over a shared, thread safe, pool of
+     * keep-alive connections.
      *
      * @param url Request URL
      * @return Response data
      * @throws IOException If something bad happened.
      */
     public static String simpleGetRequest(String url) throws IOException {
-        SimulityHttpClient instance = getSingleInstance();
-        HttpClient client = instance.getClient();
+        SimulityHttpClient instance = getSimpleInstance();
         HttpGet get = instance.get(url);
-        HttpResponse response = client.execute(get);
-        String responseToString = instance.responseToString(response, get);
-        instance.destroy();
-        return responseToString;
+        return instance.responseToString(instance.execute(get), get);
     }
 
     /**
      * Sends a simple HTTP POST request to the provided URL and returns a String
-     * of the response. This is NOT thread safe. Do not use in production,
-     * unless you are happy with being able to only support a single connection
-     * at a time.
+     * of the response. The request is sent over a shared, thread safe, pool of
+     * keep-alive connections.
      *
      * @param url Request URL
      * @return Response data
      * @throws IOException If something bad happened.
      */
     public static String simplePostRequest(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException, IOException {
-        SimulityHttpClient instance = getSingleInstance();
-        HttpClient client = instance.getClient();
+        SimulityHttpClient instance = getSimpleInstance();
         HttpPost post = instance.post(url, parameters);
-        HttpResponse response = client.execute(post);
-        String responseToString = instance.responseToString(response, post);
-        instance.destroy();
-        return responseToString;
+        return instance.responseToString(instance.execute(post), post);
     }
 
     /**
      * Sends a simple HTTP DELETE request to the provided URL and returns a
-     * String of the response. This is NOT thread safe. Do not use in
-     * production, unless you are happy with being able to only support a single
-     * connection at a time.
+     * String of the response. The request is sent over a shared, thread safe,
+     * pool of keep-alive connections.
      *
      * @param url Request URL
      * @return Response data
      * @throws IOException If something bad happened.
      */
     public static String simpleDeleteRequest(String url) throws IOException {
-        SimulityHttpClient instance = getSingleInstance();
-        HttpClient client = instance.getClient();
+        SimulityHttpClient instance = getSimpleInstance();
         HttpDelete delete = instance.delete(url);
-        HttpResponse response = client.execute(delete);
-        String responseToString = instance.responseToString(response, delete);
-        instance.destroy();
-        return responseToString;
+        return instance.responseToString(instance.execute(delete), delete);
     }
-    
+
     /**
      * Sends a simple HTTP PUT request to the provided URL and returns a String
-     * of the response. This is NOT thread safe. Do not use in production,
-     * unless you are happy with being able to only support a single connection
-     * at a time.
-     * 
+     * of the response. The request is sent over a shared, thread safe, pool of
+     * keep-alive connections.
+     *
      * @param url Request url
      * @return response data
      * @throws IOException If something bad happened
      */
-    
     public static String simplePutRequest(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException, IOException {
-        SimulityHttpClient instance = getSingleInstance();
-        HttpClient client = instance.getClient();
+        SimulityHttpClient instance = getSimpleInstance();
         HttpPut put = instance.put(url, parameters);
-        HttpResponse response = client.execute(put);
-        String responseToString = instance.responseToString(response, put);
-        instance.destroy();
-        return responseToString;       
+        return instance.responseToString(instance.execute(put), put);
     }
-    
+
     /**
      * Sends a simple HTTP PATCH request to the provided URL and returns a String
-     * of the response. This is NOT thread safe. Do not use in production,
-     * unless you are happy with being able to only support a single connection
-     * at a time.
-     * 
+     * of the response. The request is sent over a shared, thread safe, pool of
+     * keep-alive connections.
+     *
      * @param url Request url
      * @return response data
      * @throws IOException If something bad happened
      */
-    
     public static String simplePatchRequest(String url, ArrayList<NameValuePair> parameters) throws UnsupportedEncodingException, IOException {
-        SimulityHttpClient instance = getSingleInstance();
-        HttpClient client = instance.getClient();
+        SimulityHttpClient instance = getSimpleInstance();
         HttpPatch patch = instance.patch(url, parameters);
-        HttpResponse response = client.execute(patch);
-        String responseToString = instance.responseToString(response, patch);
-        instance.destroy();
-        return responseToString;       
+        return instance.responseToString(instance.execute(patch), patch);
+    }
+
+    /**
+     * Builds fully set up, independent, instances of the SimulityHttpClient.
+     * Pooled instances built with the same schemes and pool configuration
+     * share one connection pool, which stays open until the last of them is
+     * destroyed.
+     */
+    public static class Builder {
+
+        private boolean _http;
+        private boolean _https;
+        private boolean _pooled = true;
+        private ConnectionPoolConfiguration _poolConfiguration = new ConnectionPoolConfiguration();
+        private ExecutionMode _executionMode = ExecutionMode.PLATFORM_THREADS;
+        private boolean _quietHotPath;
+        private boolean _singleFlight;
+        private String _metricsName;
+        private Protocol _protocol = Protocol.HTTP_1_1;
+        private HttpTransport _transport;
+        private CacheConfiguration _cacheConfiguration;
+        private boolean _compression;
+        private boolean _compressRequestBodies;
+        private ObjectMapper _objectMapper;
+        private TlsConfiguration _tlsConfiguration;
+        private final Map<String, HttpHost[]> _services = new LinkedHashMap<String, HttpHost[]>();
+        private ConcurrencyLimitConfiguration _concurrencyLimit;
+        private HedgingConfiguration _hedging;
+        private RetryConfiguration _retry;
+
+        /**
+         * @return Builder with HTTP support applied.
+         */
+        public Builder supportHttp() {
+            _http = true;
+            return this;
+        }
+
+        /**
+         * @return Builder with HTTPS support applied.
+         */
+        public Builder supportHttps() {
+            _https = true;
+            return this;
+        }
+
+        /**
+         * @param poolConfiguration sizing of the connection pool
+         * @return Builder with a pooled connection manager applied.
+         */
+        public Builder poolConfiguration(ConnectionPoolConfiguration poolConfiguration) {
+            _pooled = true;
+            _poolConfiguration = poolConfiguration;
+            return this;
+        }
+
+        /**
+         * @return Builder without a connection pool.
+         */
+        public Builder singleThreaded() {
+            _pooled = false;
+            return this;
+        }
+
+        /**
+         * @param executionMode threads on which asynchronous, submitted and
+         * invoked requests are run
+         * @return Builder with the execution mode applied.
+         */
+        public Builder executionMode(ExecutionMode executionMode) {
+            _executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * @param quietHotPath whether to summarise exchanges instead of
+         * tracing them
+         * @return Builder with the logging mode applied.
+         * @see SimulityHttpClient#quietHotPath(boolean)
+         */
+        public Builder quietHotPath(boolean quietHotPath) {
+            _quietHotPath = quietHotPath;
+            return this;
+        }
+
+        /**
+         * @param protocol protocol spoken by the instance
+         * @return Builder with the protocol applied.
+         */
+        public Builder protocol(Protocol protocol) {
+            _protocol = protocol;
+            return this;
+        }
+
+        /**
+         * @param transport transport carrying the requests in place of the
+         * Apache HttpClient (and the protocol), it is shut down when the
+         * instance is destroyed (set up again, the instance speaks the
+         * protocol)
+         * @return Builder with the transport applied.
+         */
+        public Builder transport(HttpTransport transport) {
+            _transport = transport;
+            return this;
+        }
+
+        /**
+         * Serves repeated requests from an HTTP cache (of this instance) in
+         * front of {@link SimulityHttpClient#execute}, revalidating stale
+         * responses with conditional requests. Only the HTTP/1.1 protocol
+         * is cached.
+         *
+         * @param cacheConfiguration bounds of the cache
+         * @return Builder with the response cache applied.
+         */
+        public Builder cache(CacheConfiguration cacheConfiguration) {
+            _cacheConfiguration = cacheConfiguration;
+            return this;
+        }
+
+        /**
+         * Negotiates compressed responses: requests carry an Accept-Encoding
+         * of gzip and deflate (and br on a transport, when the Brotli decoder
+         * is on the class path) and compressed bodies are decoded while they
+         * are read, so the response readers see the original content.
+         *
+         * @param compression whether to negotiate compressed responses
+         * @return Builder with the content negotiation applied.
+         */
+        public Builder compression(boolean compression) {
+            _compression = compression;
+            return this;
+        }
+
+        /**
+         * Compresses the bodies of the requests built by post(), put() and
+         * patch() with gzip; only for servers that accept
+         * {@code Content-Encoding: gzip} request bodies.
+         *
+         * @param compressRequestBodies whether to compress request bodies
+         * @return Builder with the request compression applied.
+         */
+        public Builder compressRequestBodies(boolean compressRequestBodies) {
+            _compressRequestBodies = compressRequestBodies;
+            return this;
+        }
+
+        /**
+         * @param name service name, used in place of a host name in request
+         * URLs
+         * @param endpoints replicas of the service
+         * @return Builder with the service applied.
+         * @see SimulityHttpClient#service(String, HttpHost...)
+         */
+        public Builder service(String name, HttpHost... endpoints) {
+            _services.put(name, endpoints.clone());
+            return this;
+        }
+
+        /**
+         * Configures the TLS layer of the HTTPS scheme and of the HTTP/2
+         * transport: trust and key material, protocols, cipher suites and the
+         * session cache. Give clients the same configuration instance to let
+         * them resume each other's sessions.
+         *
+         * @param tlsConfiguration TLS settings, in place of
+         * {@link TlsConfiguration#getDefault()}
+         * @return Builder with the TLS settings applied.
+         */
+        public Builder tls(TlsConfiguration tlsConfiguration) {
+            _tlsConfiguration = tlsConfiguration;
+            return this;
+        }
+
+        /**
+         * @param objectMapper mapper used by responseAs() and
+         * streamJsonArray(), in place of one that ignores unknown properties
+         * @return Builder with the mapper applied.
+         */
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            _objectMapper = objectMapper;
+            return this;
+        }
+
+        /**
+         * Records request latencies (lease wait, connect, time to first byte
+         * and total) and pool usage, readable from
+         * {@link SimulityHttpClient#getMetrics()} and over JMX as
+         * {@code com.simulity.server.client.http:type=SimulityHttpClient,name=<name>}.
+         *
+         * @param name name the metrics are registered under
+         * @return Builder with metrics applied.
+         */
+        public Builder metrics(String name) {
+            _metricsName = name;
+            return this;
+        }
+
+        /**
+         * @param singleFlight whether to coalesce identical concurrent GET and
+         * HEAD requests
+         * @return Builder with the coalescing mode applied.
+         * @see SimulityHttpClient#singleFlight(boolean)
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            _singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * @param concurrencyLimit adaptive limit on the requests in flight per
+         * route
+         * @return Builder with the concurrency limit applied.
+         * @see SimulityHttpClient#concurrencyLimit(ConcurrencyLimitConfiguration)
+         */
+        public Builder concurrencyLimit(ConcurrencyLimitConfiguration concurrencyLimit) {
+            _concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * @param hedging settings of the hedging of idempotent requests
+         * @return Builder with the hedging applied.
+         * @see SimulityHttpClient#hedging(HedgingConfiguration)
+         */
+        public Builder hedging(HedgingConfiguration hedging) {
+            _hedging = hedging;
+            return this;
+        }
+
+        /**
+         * @param retry settings of the retries of failed requests
+         * @return Builder with the retries applied.
+         * @see SimulityHttpClient#retry(RetryConfiguration)
+         */
+        public Builder retry(RetryConfiguration retry) {
+            _retry = retry;
+            return this;
+        }
+
+        /**
+         * @return a new instance of the SimulityHttpClient
+         */
+        public SimulityHttpClient build() {
+            return new SimulityHttpClient(this);
+        }
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Coalesces identical concurrent requests of a client: the first caller (the
+ * leader) executes the request and buffers the response, the callers that
+ * arrive while it is in flight wait for and share that response instead of
+ * sending their own. Each caller gets its own copy of the response, backed
+ * by the same (repeatable) body.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<HttpResponse>> _flights = new ConcurrentHashMap<String, CompletableFuture<HttpResponse>>();
+
+    /**
+     * @param request request to check
+     * @return whether the request is safe to share: a GET or HEAD without a
+     * body
+     */
+    static boolean isCoalescable(HttpUriRequest request) {
+        String method = request.getMethod();
+        return ("GET".equals(method) || "HEAD".equals(method)) && !(request instanceof HttpEntityEnclosingRequest);
+    }
+
+    /**
+     * @param client client executing the leading request
+     * @param request request to execute or join
+     * @return a copy of the shared response, with a buffered entity
+     * @throws IOException if the shared exchange failed
+     */
+    HttpResponse execute(SimulityHttpClient client, HttpUriRequest request) throws IOException {
+        String key = keyOf(request);
+        CompletableFuture<HttpResponse> flight = new CompletableFuture<HttpResponse>();
+        CompletableFuture<HttpResponse> leader = _flights.putIfAbsent(key, flight);
+        if (leader == null) {
+            try {
+                HttpResponse response = ResponseBodyReader.buffer(client.executeExchange(request));
+                flight.complete(response);
+                return copy(response);
+            } catch (Throwable ex) {
+                // Errors included, or the followers would wait forever.
+                request.abort();
+                flight.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                _flights.remove(key, flight);
+            }
+        }
+        try {
+            return copy(leader.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared response");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                // Each follower gets its own exception, which it may add to.
+                throw new IOException("Shared request failed: " + cause.getMessage(), cause);
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private static String keyOf(HttpUriRequest request) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getMethod()).append(' ').append(request.getURI());
+        for (Header header : request.getAllHeaders()) {
+            key.append('\n').append(header.getName()).append(": ").append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    private static HttpResponse copy(HttpResponse response) {
+        BasicHttpResponse copy = new BasicHttpResponse(response.getStatusLine());
+        copy.setHeaders(response.getAllHeaders());
+        copy.setEntity(response.getEntity());
+        copy.setLocale(response.getLocale());
+        return copy;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.SchemeLayeredSocketFactory;
+import org.apache.http.conn.scheme.SchemeSocketFactory;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Records the time taken to open a connection (including the TLS handshake of
+ * secure sockets) into the {@link ClientMetrics} of the exchange running on
+ * the calling thread. Without metrics the calls go straight to the wrapped
+ * factory.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+class TimedSocketFactory implements SchemeSocketFactory {
+
+    final SchemeSocketFactory _delegate;
+
+    /**
+     * @param delegate factory creating the sockets
+     * @return a timed factory, layered when the delegate is
+     */
+    static SchemeSocketFactory wrap(SchemeSocketFactory delegate) {
+        if (delegate instanceof SchemeLayeredSocketFactory) {
+            return new Layered((SchemeLayeredSocketFactory) delegate);
+        }
+        return new TimedSocketFactory(delegate);
+    }
+
+    TimedSocketFactory(SchemeSocketFactory delegate) {
+        _delegate = delegate;
+    }
+
+    @Override
+    public Socket createSocket(HttpParams params) throws IOException {
+        return _delegate.createSocket(params);
+    }
+
+    @Override
+    public Socket connectSocket(Socket sock, InetSocketAddress remoteAddress, InetSocketAddress localAddress,
+            HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
+        ClientMetrics metrics = ClientMetrics.CURRENT.get();
+        if (metrics == null) {
+            return _delegate.connectSocket(sock, remoteAddress, localAddress, params);
+        }
+        long start = System.nanoTime();
+        Socket socket = _delegate.connectSocket(sock, remoteAddress, localAddress, params);
+        metrics.connected(System.nanoTime() - start);
+        return socket;
+    }
+
+    @Override
+    public boolean isSecure(Socket sock) throws IllegalArgumentException {
+        return _delegate.isSecure(sock);
+    }
+
+    /**
+     * Timed factory of sockets that can be layered over a tunnel (HTTPS).
+     */
+    static class Layered extends TimedSocketFactory implements SchemeLayeredSocketFactory {
+
+        Layered(SchemeLayeredSocketFactory delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpParams params)
+                throws IOException, UnknownHostException {
+            return ((SchemeLayeredSocketFactory) _delegate).createLayeredSocket(socket, target, port, params);
+        }
+    }
+}
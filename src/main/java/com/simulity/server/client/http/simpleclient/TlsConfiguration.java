@@ -0,0 +1,248 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import org.apache.http.conn.ssl.SSLInitializationException;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+
+/**
+ * TLS settings of the HTTPS scheme registered by
+ * {@link SimulityHttpClient#supportHttps()}. The SSLContext is built once,
+ * when a client first needs it, and then shared by every client given this
+ * configuration; so is its client session cache, which lets reconnects to
+ * the same server resume the session (by session id or TLS 1.3 ticket)
+ * instead of running a full handshake. Clients without a configuration of
+ * their own share {@link #getDefault()}.
+ *
+ * Settings changed after the first client has connected are ignored.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class TlsConfiguration {
+
+    private static final TlsConfiguration DEFAULT = new TlsConfiguration();
+    private SSLContext _sslContext;
+    private KeyStore _trustStore;
+    private KeyStore _keyStore;
+    private char[] _keyPassword;
+    private String[] _protocols;
+    private String[] _cipherSuites;
+    private int _sessionCacheSize = -1;
+    private long _sessionTimeout = -1;
+    private X509HostnameVerifier _hostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+    private SSLContext _builtContext;
+    private SSLSocketFactory _socketFactory;
+
+    /**
+     * @return configuration shared by the clients that are not given one:
+     * the JDK trust store and protocols, with a shared session cache
+     */
+    public static TlsConfiguration getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param sslContext context to use as is, in place of one built from the
+     * trust and key material
+     * @return TlsConfiguration with the context applied.
+     */
+    public TlsConfiguration sslContext(SSLContext sslContext) {
+        _sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * @param trustStore certificates trusted to identify servers, in place of
+     * the JDK trust store
+     * @return TlsConfiguration with the trust material applied.
+     */
+    public TlsConfiguration trustMaterial(KeyStore trustStore) {
+        _trustStore = trustStore;
+        return this;
+    }
+
+    /**
+     * @param keyStore keys and certificates the client authenticates with
+     * @param password password of the keys
+     * @return TlsConfiguration with the key material applied.
+     */
+    public TlsConfiguration keyMaterial(KeyStore keyStore, char[] password) {
+        _keyStore = keyStore;
+        _keyPassword = password != null ? password.clone() : null;
+        return this;
+    }
+
+    /**
+     * @param protocols protocols to enable, for example "TLSv1.3" and
+     * "TLSv1.2"; the JDK defaults when not set
+     * @return TlsConfiguration with the protocols applied.
+     */
+    public TlsConfiguration protocols(String... protocols) {
+        _protocols = protocols.clone();
+        return this;
+    }
+
+    /**
+     * @param cipherSuites cipher suites to enable, in order of preference; the
+     * JDK defaults when not set
+     * @return TlsConfiguration with the cipher suites applied.
+     */
+    public TlsConfiguration cipherSuites(String... cipherSuites) {
+        _cipherSuites = cipherSuites.clone();
+        return this;
+    }
+
+    /**
+     * @param size maximum number of sessions cached for resumption, zero for
+     * no limit
+     * @param timeout time a cached session can be resumed for
+     * @param unit unit of the timeout
+     * @return TlsConfiguration with the session cache applied.
+     */
+    public TlsConfiguration sessionCache(int size, long timeout, TimeUnit unit) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Session cache size must not be negative: " + size);
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Session timeout must be positive: " + timeout);
+        }
+        _sessionCacheSize = size;
+        _sessionTimeout = unit.toSeconds(timeout);
+        return this;
+    }
+
+    /**
+     * @param hostnameVerifier check of the server name against its
+     * certificate, browser compatible by default
+     * @return TlsConfiguration with the verifier applied.
+     */
+    public TlsConfiguration hostnameVerifier(X509HostnameVerifier hostnameVerifier) {
+        _hostnameVerifier = hostnameVerifier;
+        return this;
+    }
+
+    /**
+     * @return the context shared by the clients of this configuration
+     * @throws SSLInitializationException if the context could not be built
+     */
+    public synchronized SSLContext getSSLContext() {
+        if (_builtContext == null) {
+            SSLContext context = _sslContext != null ? _sslContext : buildContext();
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if (sessions != null && _sessionCacheSize >= 0) {
+                sessions.setSessionCacheSize(_sessionCacheSize);
+                sessions.setSessionTimeout((int) Math.min(Integer.MAX_VALUE, _sessionTimeout));
+            }
+            _builtContext = context;
+        }
+        return _builtContext;
+    }
+
+    /**
+     * @return parameters with the protocols and cipher suites to enable, on
+     * top of the defaults of the context
+     */
+    public SSLParameters getSSLParameters() {
+        SSLParameters parameters = getSSLContext().getDefaultSSLParameters();
+        if (_protocols != null) {
+            parameters.setProtocols(_protocols.clone());
+        }
+        if (_cipherSuites != null) {
+            parameters.setCipherSuites(_cipherSuites.clone());
+            parameters.setUseCipherSuitesOrder(true);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the socket factory of the HTTPS scheme, shared by the clients
+     * of this configuration
+     */
+    synchronized SSLSocketFactory socketFactory() {
+        if (_socketFactory == null) {
+            final String[] protocols = _protocols;
+            final String[] cipherSuites = _cipherSuites;
+            _socketFactory = new SSLSocketFactory(getSSLContext(), _hostnameVerifier) {
+                @Override
+                protected void prepareSocket(SSLSocket socket) {
+                    if (protocols != null) {
+                        socket.setEnabledProtocols(protocols);
+                    }
+                    if (cipherSuites != null) {
+                        socket.setEnabledCipherSuites(cipherSuites);
+                    }
+                }
+            };
+        }
+        return _socketFactory;
+    }
+
+    private SSLContext buildContext() {
+        try {
+            KeyManager[] keyManagers = null;
+            if (_keyStore != null) {
+                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                factory.init(_keyStore, _keyPassword);
+                keyManagers = factory.getKeyManagers();
+            }
+            TrustManager[] trustManagers = null;
+            if (_trustStore != null) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(_trustStore);
+                trustManagers = factory.getTrustManagers();
+            }
+            SSLContext context = SSLContext.getInstance(SSLSocketFactory.TLS);
+            context.init(keyManagers, trustManagers, null);
+            return context;
+        } catch (GeneralSecurityException ex) {
+            throw new SSLInitializationException("Could not build the TLS context: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TlsConfiguration{protocols=" + (_protocols != null ? Arrays.toString(_protocols) : "default")
+                + ", cipherSuites=" + (_cipherSuites != null ? _cipherSuites.length : "default")
+                + ", sessionCacheSize=" + _sessionCacheSize
+                + ", sessionTimeout=" + _sessionTimeout + "s"
+                + ", customContext=" + (_sslContext != null)
+                + ", trustMaterial=" + (_trustStore != null)
+                + ", keyMaterial=" + (_keyStore != null) + "}";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that caps extra requests (hedges and retries) at a ratio of
+ * the requests made: every request deposits the ratio, up to the burst, and
+ * every extra request withdraws a whole token. Tokens are counted in
+ * thousandths so that the bucket is a single lock free counter.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+final class TokenBudget {
+
+    private static final long TOKEN = 1000;
+    private final long _deposit;
+    private final long _max;
+    private final AtomicLong _tokens;
+
+    /**
+     * @param ratio tokens earned per request
+     * @param burst tokens that can be saved up, the bucket starts full
+     */
+    TokenBudget(double ratio, int burst) {
+        _deposit = (long) (ratio * TOKEN);
+        _max = burst * TOKEN;
+        _tokens = new AtomicLong(_max);
+    }
+
+    void deposit() {
+        long tokens = _tokens.get();
+        while (tokens < _max && !_tokens.compareAndSet(tokens, Math.min(_max, tokens + _deposit))) {
+            tokens = _tokens.get();
+        }
+    }
+
+    /**
+     * @return whether a token was available and taken
+     */
+    boolean withdraw() {
+        long tokens = _tokens.get();
+        while (tokens >= TOKEN) {
+            if (_tokens.compareAndSet(tokens, tokens - TOKEN)) {
+                return true;
+            }
+            tokens = _tokens.get();
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBudget{tokens=" + _tokens.get() / (double) TOKEN + "}";
+    }
+}
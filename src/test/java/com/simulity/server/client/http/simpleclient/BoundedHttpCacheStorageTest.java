@@ -0,0 +1,74 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Date;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class BoundedHttpCacheStorageTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByEntries() {
+        BoundedHttpCacheStorage storage = new BoundedHttpCacheStorage(2, Long.MAX_VALUE);
+        storage.putEntry("a", entry(10));
+        storage.putEntry("b", entry(10));
+        storage.getEntry("a");
+        storage.putEntry("c", entry(10));
+        assertNotNull(storage.getEntry("a"));
+        assertNull(storage.getEntry("b"));
+        assertNotNull(storage.getEntry("c"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByBytes() {
+        BoundedHttpCacheStorage storage = new BoundedHttpCacheStorage(100, 3000);
+        storage.putEntry("a", entry(1000));
+        storage.putEntry("b", entry(1000));
+        storage.putEntry("c", entry(1000));
+        assertEquals(2, storage.size());
+        assertNull(storage.getEntry("a"));
+        storage.removeEntry("b");
+        storage.removeEntry("c");
+        assertEquals(0, storage.bytes());
+    }
+
+    private static HttpCacheEntry entry(int size) {
+        return new HttpCacheEntry(new Date(), new Date(), new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                new Header[0], new HeapResource(new byte[size]));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testAdditiveIncrease() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration()
+                .initialLimit(4).bounds(1, 6).rttTolerance(1000000));
+        ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/charges"));
+        long[] starts = new long[4];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = limit.acquire();
+        }
+        for (long start : starts) {
+            limit.release(start, false);
+        }
+        assertEquals(6, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+        // A lone request does not use the limit, so it does not grow it.
+        ConcurrencyLimiter.Limit other = limiter.limitOf(URI.create("http://payments/"));
+        other.release(other.acquire(), false);
+        assertEquals(4, other.getLimit());
+    }
+
+    @Test
+    public void testBackoffOncePerRoundTrip() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration()
+                .initialLimit(10).backoffRatio(0.5));
+        ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/"));
+        long first = limit.acquire();
+        long second = limit.acquire();
+        limit.release(first, true);
+        assertEquals(5, limit.getLimit());
+        // Sent before the backoff, so it reflects the same overload.
+        limit.release(second, true);
+        assertEquals(5, limit.getLimit());
+        limit.release(limit.acquire(), true);
+        assertEquals(2, limit.getLimit());
+        limit.release(limit.acquire(), true);
+        limit.release(limit.acquire(), true);
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    public void testDroppedSampleNotBaseline() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration()
+                .initialLimit(16).backoffRatio(0.5).rttTolerance(4));
+        ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/"));
+        // A fast failure on the first, probing, sample.
+        limit.release(limit.acquire(), true);
+        assertEquals(8, limit.getLimit());
+        for (int i = 0; i < 10; i++) {
+            long start = limit.acquire();
+            Thread.sleep(10);
+            limit.release(start, false);
+        }
+        assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    public void testRejectedOverLimit() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration().initialLimit(1));
+        ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/"));
+        long start = limit.acquire();
+        try {
+            limit.acquire();
+            fail("Acquired over the limit");
+        } catch (ConcurrencyLimitExceededException ex) {
+            assertEquals(1, ex.getLimit());
+            assertEquals("http://billing:80", ex.getRoute().toURI());
+        }
+        limit.release(start, false);
+        limit.release(limit.acquire(), false);
+    }
+
+    @Test
+    public void testQueuedUntilReleased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration()
+                .initialLimit(1).bounds(1, 1).queue(1, 5, TimeUnit.SECONDS));
+        final ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/"));
+        final long start = limit.acquire();
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                limit.release(start, false);
+            }
+        });
+        releaser.start();
+        long waited = System.nanoTime();
+        limit.release(limit.acquire(), false);
+        assertTrue(System.nanoTime() - waited >= TimeUnit.MILLISECONDS.toNanos(50));
+        releaser.join();
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    public void testQueueTimeout() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration()
+                .initialLimit(1).queue(4, 50, TimeUnit.MILLISECONDS));
+        ConcurrencyLimiter.Limit limit = limiter.limitOf(URI.create("http://billing/"));
+        limit.acquire();
+        long waited = System.nanoTime();
+        try {
+            limit.acquire();
+            fail("Acquired over the limit");
+        } catch (ConcurrencyLimitExceededException ex) {
+            assertTrue(System.nanoTime() - waited >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void testRoutes() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimitConfiguration());
+        assertSame(limiter.limitOf(URI.create("http://billing/")), limiter.limitOf(URI.create("http://billing:80/charges")));
+        assertTrue(limiter.limitOf(URI.create("https://billing/")) != limiter.limitOf(URI.create("http://billing/")));
+        assertNull(limiter.limitOf(URI.create("/charges")));
+        assertEquals(2, limiter.getLimits().size());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ContentCodingTest {
+
+    private static final String BODY = "Hello, client\nHello, client\nHello, client\n";
+
+    @Test
+    public void testGzipRoundTrip() throws IOException {
+        GzipCompressingEntity compressed = new GzipCompressingEntity(new StringEntity(BODY));
+        assertEquals("gzip", compressed.getContentEncoding().getValue());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressed.writeTo(out);
+
+        HttpResponse response = response(out.toByteArray(), "gzip");
+        ContentCoding.decode(response);
+        assertNull(response.getFirstHeader("Content-Encoding"));
+        assertNull(response.getEntity().getContentEncoding());
+        assertEquals(BODY, ResponseBodyReader.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testGzipContentStreamed() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            body.append(i).append(BODY);
+        }
+        GzipCompressingEntity compressed = new GzipCompressingEntity(new StringEntity(body.toString()));
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        compressed.writeTo(written);
+        InputStream content = compressed.getContent();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = content.read(buffer)) != -1) {
+            read.write(buffer, 0, count);
+        }
+        content.close();
+
+        // Written or read, the body decodes to the original.
+        for (byte[] gzip : new byte[][]{written.toByteArray(), read.toByteArray()}) {
+            HttpResponse response = ContentCoding.decode(response(gzip, "gzip"));
+            assertEquals(body.toString(), ResponseBodyReader.toString(response.getEntity()));
+        }
+    }
+
+    @Test
+    public void testDeflateZlibAndRaw() throws IOException {
+        for (boolean raw : new boolean[]{false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+            deflater.write(BODY.getBytes("ISO-8859-1"));
+            deflater.close();
+            HttpResponse response = ContentCoding.decode(response(out.toByteArray(), "deflate"));
+            assertEquals(BODY, ResponseBodyReader.toString(response.getEntity()));
+        }
+    }
+
+    @Test
+    public void testUnknownCodingLeftAlone() throws IOException {
+        HttpResponse response = ContentCoding.decode(response(BODY.getBytes("ISO-8859-1"), "compress"));
+        assertEquals("compress", response.getFirstHeader("Content-Encoding").getValue());
+        assertEquals(BODY, ResponseBodyReader.toString(response.getEntity()));
+        assertFalse(ContentCoding.isSupported("compress"));
+        assertTrue(ContentCoding.isSupported("gzip"));
+    }
+
+    private static HttpResponse response(byte[] body, String coding) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        entity.setContentEncoding(coding);
+        response.setEntity(entity);
+        response.setHeader("Content-Encoding", coding);
+        response.setHeader("Content-Length", String.valueOf(body.length));
+        return response;
+    }
+}
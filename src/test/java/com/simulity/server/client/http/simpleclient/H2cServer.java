@@ -0,0 +1,317 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP/2 server without TLS (h2c) on the loopback interface, for
+ * the tests of the HTTP/2 transport. A connection starts as an HTTP/1.1
+ * request asking to upgrade to h2c, which is answered on stream 1; every
+ * further request arrives as a stream of the same connection. Each request
+ * is answered with status 200 and a fixed body after a configurable delay,
+ * so that streams overlap and the multiplexing can be observed. Request
+ * headers are not decoded.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class H2cServer implements Closeable {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(ISO_8859_1);
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private final byte[] _body = "Hello, client\n".getBytes(ISO_8859_1);
+    private volatile long _delay;
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _connections = new AtomicLong();
+    private final AtomicInteger _open = new AtomicInteger();
+    private final AtomicInteger _maxOpen = new AtomicInteger();
+    private final CopyOnWriteArrayList<Socket> _sockets = new CopyOnWriteArrayList<Socket>();
+    private ServerSocket _serverSocket;
+    private ScheduledExecutorService _scheduler;
+    private volatile boolean _running;
+
+    /**
+     * @param delay time to wait before answering each request
+     * @param unit unit of the delay
+     * @return H2cServer with the delay applied.
+     */
+    public H2cServer delay(long delay, TimeUnit unit) {
+        _delay = unit.toMillis(delay);
+        return this;
+    }
+
+    /**
+     * @return the started H2cServer, listening on a free port
+     * @throws IOException if no port could be bound
+     */
+    public H2cServer start() throws IOException {
+        _serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        _scheduler = Executors.newScheduledThreadPool(2, new DaemonThreadFactory("h2c-delay"));
+        _running = true;
+        new DaemonThreadFactory("h2c-" + getPort()).newThread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }).start();
+        return this;
+    }
+
+    public int getPort() {
+        return _serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return base URL of the server
+     */
+    public String url() {
+        return "http://localhost:" + getPort();
+    }
+
+    /**
+     * @return number of requests received since the server was started
+     */
+    public long getRequestCount() {
+        return _requests.get();
+    }
+
+    /**
+     * @return number of connections accepted since the server was started
+     */
+    public long getConnectionCount() {
+        return _connections.get();
+    }
+
+    /**
+     * @return highest number of requests that were waiting for their response
+     * at the same time
+     */
+    public int getMaxConcurrentStreams() {
+        return _maxOpen.get();
+    }
+
+    @Override
+    public void close() {
+        _running = false;
+        try {
+            _serverSocket.close();
+        } catch (IOException ex) {
+            // Closing anyway.
+        }
+        for (Socket socket : _sockets) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Closing anyway.
+            }
+        }
+        _scheduler.shutdownNow();
+    }
+
+    private void accept() {
+        while (_running) {
+            final Socket socket;
+            try {
+                socket = _serverSocket.accept();
+            } catch (IOException ex) {
+                return;
+            }
+            _connections.incrementAndGet();
+            _sockets.add(socket);
+            new DaemonThreadFactory("h2c-connection").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException ex) {
+                        // The client went away.
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ex) {
+                            // Closing anyway.
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        final OutputStream out = socket.getOutputStream();
+        String request = readRequestHeaders(in).toLowerCase(Locale.ROOT);
+        if (!request.contains("upgrade: h2c")) {
+            throw new IOException("Only h2c upgrades are served");
+        }
+        synchronized (out) {
+            out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(ISO_8859_1));
+            writeFrame(out, SETTINGS, 0, 0, new byte[0]);
+        }
+        requested(out, 1);
+        byte[] preface = new byte[PREFACE.length];
+        in.readFully(preface);
+        if (!Arrays.equals(PREFACE, preface)) {
+            throw new IOException("Missing connection preface");
+        }
+        Set<Integer> answered = new HashSet<Integer>();
+        while (_running) {
+            int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+            int type = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            int stream = in.readInt() & 0x7fffffff;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            switch (type) {
+                case SETTINGS:
+                    if ((flags & ACK) == 0) {
+                        synchronized (out) {
+                            writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                        }
+                    }
+                    break;
+                case PING:
+                    if ((flags & ACK) == 0) {
+                        synchronized (out) {
+                            writeFrame(out, PING, ACK, 0, payload);
+                        }
+                    }
+                    break;
+                case DATA:
+                    if (length > 0) {
+                        // Keep the connection window of the client open.
+                        synchronized (out) {
+                            writeFrame(out, WINDOW_UPDATE, 0, 0, new byte[]{0, 0, (byte) (length >>> 8), (byte) length});
+                        }
+                    }
+                    if ((flags & END_STREAM) != 0 && answered.add(stream)) {
+                        requested(out, stream);
+                    }
+                    break;
+                case HEADERS:
+                    if ((flags & END_STREAM) != 0 && answered.add(stream)) {
+                        requested(out, stream);
+                    }
+                    break;
+                case GOAWAY:
+                    return;
+                default:
+                    // Priorities, window updates and resets need no answer.
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Answers the request on the stream once the delay has passed.
+     */
+    private void requested(final OutputStream out, final int stream) {
+        _requests.incrementAndGet();
+        int open = _open.incrementAndGet();
+        int max = _maxOpen.get();
+        while (open > max && !_maxOpen.compareAndSet(max, open)) {
+            max = _maxOpen.get();
+        }
+        _scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                _open.decrementAndGet();
+                try {
+                    synchronized (out) {
+                        writeFrame(out, HEADERS, END_HEADERS, stream, responseHeaders());
+                        writeFrame(out, DATA, END_STREAM, stream, _body);
+                    }
+                } catch (IOException ex) {
+                    // The client went away.
+                }
+            }
+        }, _delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return ":status: 200" (indexed) and the content-length (literal
+     * without indexing), which leave the HPACK table of the client unchanged
+     */
+    private byte[] responseHeaders() {
+        byte[] length = Integer.toString(_body.length).getBytes(ISO_8859_1);
+        byte[] block = new byte[4 + length.length];
+        block[0] = (byte) 0x88;
+        block[1] = 0x0f;
+        block[2] = 0x0d;
+        block[3] = (byte) length.length;
+        System.arraycopy(length, 0, block, 4, length.length);
+        return block;
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload) throws IOException {
+        byte[] header = {
+            (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+            (byte) type, (byte) flags,
+            (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream};
+        out.write(header);
+        out.write(payload);
+        out.flush();
+    }
+
+    private static String readRequestHeaders(DataInputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (headers.length() < 4 || !headers.substring(headers.length() - 4).equals("\r\n\r\n")) {
+            int read = in.read();
+            if (read == -1) {
+                throw new EOFException();
+            }
+            headers.append((char) read);
+        }
+        return headers.toString();
+    }
+}
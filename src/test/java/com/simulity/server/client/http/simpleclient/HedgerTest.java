@@ -0,0 +1,91 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class HedgerTest {
+
+    @Test
+    public void testHedgeableRequests() {
+        Hedger hedger = new Hedger(new HedgingConfiguration());
+        assertTrue(hedger.isHedgeable(new HttpGet("http://billing/")));
+        assertFalse(hedger.isHedgeable(new HttpDelete("http://billing/")));
+        assertFalse(hedger.isHedgeable(new HttpPost("http://billing/")));
+        hedger = new Hedger(new HedgingConfiguration().methods("get", "delete"));
+        assertTrue(hedger.isHedgeable(new HttpDelete("http://billing/")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsafeMethodRejected() {
+        new HedgingConfiguration().methods("GET", "POST");
+    }
+
+    @Test
+    public void testDelayFollowsPercentile() throws InterruptedException {
+        Hedger hedger = new Hedger(new HedgingConfiguration().percentile(0.9)
+                .delay(1, 500, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), hedger.getDelay());
+        Thread.sleep(1100);
+        for (int i = 0; i < 17; i++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        for (int i = 0; i < 2; i++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(40));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), hedger.getDelay());
+        // The window is replaced once it holds enough responses.
+        hedger.record(TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), hedger.getDelay());
+        hedger.record(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), hedger.getDelay());
+    }
+
+    @Test
+    public void testCopy() {
+        HttpGet get = new HttpGet("http://billing/charges?id=1");
+        get.setHeader("Accept", "application/json");
+        HttpUriRequest copy = Hedger.copyOf(get);
+        assertEquals("GET", copy.getMethod());
+        assertEquals(get.getURI(), copy.getURI());
+        assertEquals("application/json", copy.getFirstHeader("Accept").getValue());
+        copy.abort();
+        assertTrue(copy.isAborted());
+        assertFalse(get.isAborted());
+    }
+}
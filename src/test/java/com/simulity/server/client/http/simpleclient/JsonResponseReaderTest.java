@@ -0,0 +1,147 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.InputStreamEntity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class JsonResponseReaderTest {
+
+    public static class Profile {
+
+        public String iccid;
+        public int version;
+    }
+
+    @Test
+    public void testReadIgnoresUnknownProperties() throws IOException {
+        Profile profile = JsonResponseReader.read(entity("{\"iccid\":\"8944\",\"version\":3,\"added\":true}", "UTF-8"),
+                JsonResponseReader.DEFAULT_MAPPER, Profile.class);
+        assertEquals("8944", profile.iccid);
+        assertEquals(3, profile.version);
+
+        List<Map<String, Object>> list = JsonResponseReader.read(entity("[{\"a\":1},{\"b\":2}]", "UTF-8"),
+                JsonResponseReader.DEFAULT_MAPPER, new TypeReference<List<Map<String, Object>>>() {
+                });
+        assertEquals(2, list.size());
+        assertNull(JsonResponseReader.read(entity("", "UTF-8"), JsonResponseReader.DEFAULT_MAPPER, Profile.class));
+    }
+
+    @Test
+    public void testDeclaredCharset() throws IOException {
+        String name = JsonResponseReader.read(entity("\"café\"", "ISO-8859-1"), JsonResponseReader.DEFAULT_MAPPER, String.class);
+        assertEquals("café", name);
+    }
+
+    @Test
+    public void testStreamArrayClosesContent() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"iccid\":\"").append(i).append("\",\"version\":").append(i).append('}');
+        }
+        json.append(']');
+        final ClosingStream content = new ClosingStream(json.toString().getBytes("UTF-8"));
+        final List<Profile> profiles = new ArrayList<Profile>();
+        long count = JsonResponseReader.streamArray(new InputStreamEntity(content, -1), JsonResponseReader.DEFAULT_MAPPER,
+                Profile.class, new JsonResponseReader.ElementHandler<Profile>() {
+            @Override
+            public void onElement(Profile element) {
+                profiles.add(element);
+            }
+        });
+        assertEquals(1000, count);
+        assertEquals(999, profiles.get(999).version);
+        assertTrue(content.closed);
+
+        try {
+            JsonResponseReader.streamArray(entity("{}", "UTF-8"), JsonResponseReader.DEFAULT_MAPPER, Profile.class, null);
+            fail("An object is not an array");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testParser() throws IOException {
+        JsonParser parser = JsonResponseReader.parser(entity("{\"version\":7}", "UTF-8"), JsonResponseReader.DEFAULT_MAPPER);
+        try {
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals("version", parser.nextFieldName());
+            assertEquals(JsonToken.VALUE_NUMBER_INT, parser.nextToken());
+            assertEquals(7, parser.getIntValue());
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static HttpEntity entity(String json, String charset) throws IOException {
+        InputStreamEntity entity = new InputStreamEntity(new ByteArrayInputStream(json.getBytes(charset)), -1);
+        entity.setContentType("application/json; charset=" + charset);
+        return entity;
+    }
+
+    private static final class ClosingStream extends InputStream {
+
+        private final ByteArrayInputStream _in;
+        private boolean closed;
+
+        private ClosingStream(byte[] data) {
+            _in = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() {
+            return _in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return _in.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
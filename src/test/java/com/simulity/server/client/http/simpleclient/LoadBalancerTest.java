@@ -0,0 +1,136 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class LoadBalancerTest {
+
+    private static final HttpHost A = new HttpHost("10.0.0.1", 8080);
+    private static final HttpHost B = new HttpHost("10.0.0.2", 8080);
+    private static final HttpHost C = new HttpHost("10.0.0.3", 8080);
+
+    @Test
+    public void testSlowEndpointAvoided() {
+        LoadBalancer loadBalancer = new LoadBalancer();
+        loadBalancer.register("billing", Arrays.asList(A, B, C));
+        ServiceEndpoint slow = loadBalancer.endpoints("billing").get(1);
+        slow.started();
+        slow.completed(TimeUnit.MILLISECONDS.toNanos(500));
+        for (ServiceEndpoint endpoint : loadBalancer.endpoints("billing")) {
+            if (endpoint != slow) {
+                endpoint.started();
+                endpoint.completed(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+        }
+        // Two distinct endpoints are compared, so the slowest never wins.
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(loadBalancer.choose("billing") != slow);
+        }
+        assertNull(loadBalancer.choose("payments"));
+    }
+
+    @Test
+    public void testLeastOutstandingPreferred() {
+        LoadBalancer loadBalancer = new LoadBalancer();
+        loadBalancer.register("billing", Arrays.asList(A, B));
+        ServiceEndpoint busy = loadBalancer.endpoints("billing").get(0);
+        for (int i = 0; i < 10; i++) {
+            busy.started();
+        }
+        assertSame(loadBalancer.endpoints("billing").get(1), loadBalancer.choose("BILLING"));
+        assertEquals(10, busy.getInFlight());
+    }
+
+    @Test
+    public void testPeakSensitiveLatency() {
+        ServiceEndpoint endpoint = new ServiceEndpoint(A);
+        long now = System.nanoTime();
+        endpoint.started();
+        endpoint.completed(TimeUnit.MILLISECONDS.toNanos(100), now);
+        assertEquals(100000, endpoint.latencyNanos(now) / 1000, 1);
+        now += ServiceEndpoint.DECAY_NANOS;
+        endpoint.started();
+        endpoint.completed(0, now);
+        assertEquals(100000 / Math.E, endpoint.latencyNanos(now) / 1000, 1);
+        endpoint.started();
+        endpoint.failed(TimeUnit.MILLISECONDS.toNanos(1), now);
+        assertEquals(500000, endpoint.latencyNanos(now) / 1000, 1);
+        assertEquals(0, endpoint.getInFlight());
+
+        // Repeated failures do not compound past the cap.
+        for (int i = 0; i < 3; i++) {
+            endpoint.started();
+            endpoint.failed(TimeUnit.MILLISECONDS.toNanos(1), now);
+        }
+        assertEquals(5000000, endpoint.latencyNanos(now) / 1000, 1);
+        assertEquals(5000000 / Math.E, endpoint.latencyNanos(now + ServiceEndpoint.DECAY_NANOS) / 1000, 1);
+    }
+
+    @Test
+    public void testFailedEndpointTriedAgain() {
+        LoadBalancer loadBalancer = new LoadBalancer();
+        loadBalancer.register("billing", Arrays.asList(A, B));
+        ServiceEndpoint failed = loadBalancer.endpoints("billing").get(0);
+        ServiceEndpoint healthy = loadBalancer.endpoints("billing").get(1);
+        long now = System.nanoTime();
+        failed.started();
+        failed.failed(TimeUnit.SECONDS.toNanos(1), now);
+        healthy.started();
+        healthy.completed(TimeUnit.MILLISECONDS.toNanos(5), now);
+        for (int i = 0; i < 100; i++) {
+            assertSame(healthy, loadBalancer.choose("billing", now));
+        }
+
+        // Without traffic the penalty decays below the latency of the
+        // endpoint that kept serving.
+        now += 2 * TimeUnit.MINUTES.toNanos(1);
+        healthy.started();
+        healthy.completed(TimeUnit.MILLISECONDS.toNanos(5), now);
+        assertSame(failed, loadBalancer.choose("billing", now));
+    }
+
+    @Test
+    public void testReregisterKeepsFigures() {
+        LoadBalancer loadBalancer = new LoadBalancer();
+        loadBalancer.register("billing", Arrays.asList(A, B));
+        ServiceEndpoint a = loadBalancer.endpoints("billing").get(0);
+        loadBalancer.register("billing", Arrays.asList(C, A));
+        assertSame(a, loadBalancer.endpoints("billing").get(1));
+        assertEquals(C, loadBalancer.endpoints("billing").get(0).getHost());
+    }
+}
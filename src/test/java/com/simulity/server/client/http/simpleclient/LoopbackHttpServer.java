@@ -0,0 +1,652 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process HTTP/1.1 server on the loopback interface, used in place of an
+ * external echo server by the tests and the benchmarks. A single selector
+ * thread serves every connection without blocking; requests (including
+ * pipelined ones) are answered in order with a configurable status, body
+ * size, delay, transfer encoding and keep-alive behaviour. The settings may
+ * be changed while the server is running and apply to the next response.
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class LoopbackHttpServer implements Closeable {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private int _port;
+    private volatile byte[] _body = "Hello, client\n".getBytes(ISO_8859_1);
+    private volatile int _status = 200;
+    private volatile long _delay;
+    private volatile boolean _chunked;
+    private volatile int _chunkSize = 8192;
+    private volatile boolean _keepAlive = true;
+    private volatile String _headers = "";
+    private volatile String _etag;
+    private volatile boolean _gzip;
+    private volatile boolean _ranges;
+    private volatile String _lastRequestHeaders;
+    private volatile byte[] _lastRequestBody;
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _connections = new AtomicLong();
+    private final Queue<Connection> _delayed = new ConcurrentLinkedQueue<Connection>();
+    private Selector _selector;
+    private ServerSocketChannel _serverChannel;
+    private ScheduledExecutorService _scheduler;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    /**
+     * @param port port to listen on, zero for any free port
+     * @return LoopbackHttpServer with the port applied.
+     */
+    public LoopbackHttpServer port(int port) {
+        _port = port;
+        return this;
+    }
+
+    /**
+     * @param body body of every response
+     * @return LoopbackHttpServer with the body applied.
+     */
+    public LoopbackHttpServer body(String body) {
+        _body = body.getBytes(ISO_8859_1);
+        return this;
+    }
+
+    /**
+     * @param size size of the body of every response, in bytes
+     * @return LoopbackHttpServer with the body size applied.
+     */
+    public LoopbackHttpServer bodySize(int size) {
+        byte[] body = new byte[size];
+        Arrays.fill(body, (byte) 'x');
+        for (int i = 63; i < size; i += 64) {
+            body[i] = '\n';
+        }
+        _body = body;
+        return this;
+    }
+
+    /**
+     * @param status status code of every response
+     * @return LoopbackHttpServer with the status applied.
+     */
+    public LoopbackHttpServer status(int status) {
+        _status = status;
+        return this;
+    }
+
+    /**
+     * @param delay time to wait before each response is written
+     * @param unit unit of the delay
+     * @return LoopbackHttpServer with the delay applied.
+     */
+    public LoopbackHttpServer delay(long delay, TimeUnit unit) {
+        _delay = unit.toMillis(delay);
+        return this;
+    }
+
+    /**
+     * @param chunked whether to send bodies with chunked transfer encoding
+     * rather than a Content-Length
+     * @param chunkSize largest chunk written
+     * @return LoopbackHttpServer with the transfer encoding applied.
+     */
+    public LoopbackHttpServer chunked(boolean chunked, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        _chunked = chunked;
+        _chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param keepAlive whether connections are kept open between requests,
+     * otherwise every response closes its connection
+     * @return LoopbackHttpServer with the keep-alive behaviour applied.
+     */
+    public LoopbackHttpServer keepAlive(boolean keepAlive) {
+        _keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * @param name name of a header added to every response
+     * @param value value of the header
+     * @return LoopbackHttpServer with the header applied.
+     */
+    public LoopbackHttpServer header(String name, String value) {
+        _headers += name + ": " + value + "\r\n";
+        return this;
+    }
+
+    /**
+     * @param etag entity tag (quoted) of the body, requests with a matching
+     * If-None-Match are answered with 304 Not Modified; null to disable
+     * @return LoopbackHttpServer with the entity tag applied.
+     */
+    public LoopbackHttpServer etag(String etag) {
+        _etag = etag;
+        return this;
+    }
+
+    /**
+     * @param gzip whether bodies are sent gzip compressed to requests that
+     * accept it
+     * @return LoopbackHttpServer with the compression applied.
+     */
+    public LoopbackHttpServer gzip(boolean gzip) {
+        _gzip = gzip;
+        return this;
+    }
+
+    /**
+     * @param ranges whether {@code Range: bytes=n-} requests are answered
+     * with the rest of the body
+     * @return LoopbackHttpServer with the range support applied.
+     */
+    public LoopbackHttpServer ranges(boolean ranges) {
+        _ranges = ranges;
+        return this;
+    }
+
+    /**
+     * Binds the server and starts serving on a daemon thread.
+     *
+     * @return the started LoopbackHttpServer
+     * @throws IOException if the port could not be bound
+     */
+    public LoopbackHttpServer start() throws IOException {
+        _selector = Selector.open();
+        _serverChannel = ServerSocketChannel.open();
+        _serverChannel.socket().setReuseAddress(true);
+        _serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), 4096);
+        _serverChannel.configureBlocking(false);
+        _serverChannel.register(_selector, SelectionKey.OP_ACCEPT);
+        _port = _serverChannel.socket().getLocalPort();
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("loopback-http-delay"));
+        _running = true;
+        _thread = new DaemonThreadFactory("loopback-http-" + _port).newThread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        _thread.start();
+        return this;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * @return base URL of the server
+     */
+    public String url() {
+        return "http://localhost:" + _port;
+    }
+
+    /**
+     * @return number of requests received since the server was started
+     */
+    public long getRequestCount() {
+        return _requests.get();
+    }
+
+    /**
+     * @return request line and headers of the last request received
+     */
+    public String getLastRequestHeaders() {
+        return _lastRequestHeaders;
+    }
+
+    /**
+     * @return body of the last request received, as sent (chunk framing
+     * included)
+     */
+    public byte[] getLastRequestBody() {
+        return _lastRequestBody;
+    }
+
+    /**
+     * @return number of connections accepted since the server was started
+     */
+    public long getConnectionCount() {
+        return _connections.get();
+    }
+
+    /**
+     * Stops serving and closes every connection.
+     */
+    @Override
+    public void close() {
+        if (!_running) {
+            return;
+        }
+        _running = false;
+        _selector.wakeup();
+        try {
+            _thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        _scheduler.shutdownNow();
+    }
+
+    private void serve() {
+        try {
+            while (_running) {
+                _selector.select();
+                Connection delayed;
+                while ((delayed = _delayed.poll()) != null) {
+                    delayed.respond();
+                }
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Loopback server failed", ex);
+        } finally {
+            for (SelectionKey key : _selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(_selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = _serverChannel.accept()) != null) {
+            _connections.incrementAndGet();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection._key = channel.register(_selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private ByteBuffer response(boolean head, boolean close, String ifNoneMatch, boolean gzip, long rangeStart) {
+        String etag = _etag;
+        int status = etag != null && etag.equals(ifNoneMatch) ? 304 : _status;
+        byte[] body = gzip ? gzip(_body) : _body;
+        String contentRange = null;
+        if (_ranges && rangeStart >= 0 && status == 200) {
+            if (rangeStart >= body.length) {
+                status = 416;
+                contentRange = "bytes */" + body.length;
+                body = new byte[0];
+            } else {
+                status = 206;
+                contentRange = "bytes " + rangeStart + "-" + (body.length - 1) + "/" + body.length;
+                body = Arrays.copyOfRange(body, (int) rangeStart, body.length);
+            }
+        }
+        boolean chunked = _chunked;
+        int chunkSize = _chunkSize;
+        boolean bodyAllowed = status >= 200 && status != 204 && status != 304;
+        StringBuilder header = new StringBuilder(128);
+        header.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        if (bodyAllowed) {
+            header.append("Content-Type: text/plain; charset=ISO-8859-1\r\n");
+            if (gzip) {
+                header.append("Content-Encoding: gzip\r\n");
+            }
+            if (contentRange != null) {
+                header.append("Content-Range: ").append(contentRange).append("\r\n");
+            }
+            if (chunked) {
+                header.append("Transfer-Encoding: chunked\r\n");
+            } else {
+                header.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+        }
+        if (etag != null) {
+            header.append("ETag: ").append(etag).append("\r\n");
+        }
+        header.append(_headers);
+        if (close) {
+            header.append("Connection: close\r\n");
+        }
+        header.append("\r\n");
+        if (!bodyAllowed || head) {
+            return ByteBuffer.wrap(header.toString().getBytes(ISO_8859_1));
+        }
+        if (!chunked) {
+            byte[] headerBytes = header.toString().getBytes(ISO_8859_1);
+            ByteBuffer response = ByteBuffer.allocate(headerBytes.length + body.length);
+            response.put(headerBytes).put(body);
+            response.flip();
+            return response;
+        }
+        for (int offset = 0; offset < body.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, body.length - offset);
+            header.append(Integer.toHexString(length)).append("\r\n");
+            header.append(new String(body, offset, length, ISO_8859_1)).append("\r\n");
+        }
+        header.append("0\r\n\r\n");
+        return ByteBuffer.wrap(header.toString().getBytes(ISO_8859_1));
+    }
+
+    private static byte[] gzip(byte[] body) {
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(body);
+            out.close();
+            return compressed.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 304:
+                return "Not Modified";
+            case 404:
+                return "Not Found";
+            case 416:
+                return "Range Not Satisfiable";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // Closing anyway.
+        }
+    }
+
+    /**
+     * A client connection: requests are parsed from the input buffer one at
+     * a time and the next one is only looked at once the previous response
+     * has been written.
+     */
+    private final class Connection {
+
+        private final SocketChannel _channel;
+        private SelectionKey _key;
+        private ByteBuffer _in = ByteBuffer.allocate(16384);
+        private ByteBuffer _out;
+        private ByteBuffer _pending;
+        private boolean _close;
+
+        private Connection(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        private void read() {
+            try {
+                if (!_in.hasRemaining()) {
+                    _in = ByteBuffer.allocate(_in.capacity() * 2).put(_in.flip());
+                }
+                if (_channel.read(_in) == -1) {
+                    close();
+                    return;
+                }
+                process();
+            } catch (IOException ex) {
+                close();
+            }
+        }
+
+        private void process() throws IOException {
+            while (_out == null && _pending == null && _key.isValid()) {
+                if (!parse()) {
+                    _key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return whether a complete request was taken from the buffer
+         */
+        private boolean parse() throws IOException {
+            byte[] data = _in.array();
+            int limit = _in.position();
+            int headerEnd = indexOf(data, 0, limit, HEADER_END);
+            if (headerEnd < 0) {
+                return false;
+            }
+            String[] lines = new String(data, 0, headerEnd, ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            boolean head = "HEAD".equals(requestLine[0]);
+            boolean http10 = requestLine.length > 2 && "HTTP/1.0".equals(requestLine[2]);
+            String connection = null;
+            String ifNoneMatch = null;
+            boolean gzip = false;
+            long rangeStart = -1;
+            long contentLength = 0;
+            boolean chunked = false;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                if ("if-none-match".equals(name)) {
+                    ifNoneMatch = value;
+                    continue;
+                }
+                value = value.toLowerCase(Locale.ROOT);
+                if ("range".equals(name) && value.startsWith("bytes=") && value.endsWith("-")) {
+                    rangeStart = Long.parseLong(value.substring(6, value.length() - 1));
+                } else if ("accept-encoding".equals(name)) {
+                    gzip = _gzip && value.contains("gzip");
+                } else if ("content-length".equals(name)) {
+                    contentLength = Long.parseLong(value);
+                } else if ("transfer-encoding".equals(name)) {
+                    chunked = value.contains("chunked");
+                } else if ("connection".equals(name)) {
+                    connection = value;
+                }
+            }
+            boolean close = !_keepAlive || "close".equals(connection) || http10 && !"keep-alive".equals(connection);
+            int end = headerEnd + HEADER_END.length;
+            if (chunked) {
+                end = chunkedEnd(data, end, limit);
+                if (end < 0) {
+                    return false;
+                }
+            } else {
+                if (limit - end < contentLength) {
+                    return false;
+                }
+                end += (int) contentLength;
+            }
+            _lastRequestBody = Arrays.copyOfRange(data, headerEnd + HEADER_END.length, end);
+            _in.flip().position(end);
+            _in.compact();
+            _requests.incrementAndGet();
+            _close = close;
+            _lastRequestHeaders = new String(data, 0, headerEnd, ISO_8859_1);
+            ByteBuffer response = response(head, close, ifNoneMatch, gzip, rangeStart);
+            long delay = _delay;
+            if (delay > 0) {
+                _pending = response;
+                _key.interestOps(0);
+                _scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        _delayed.add(Connection.this);
+                        _selector.wakeup();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                _out = response;
+                write();
+            }
+            return true;
+        }
+
+        private void respond() {
+            if (!_key.isValid()) {
+                return;
+            }
+            _out = _pending;
+            _pending = null;
+            write();
+        }
+
+        private void write() {
+            try {
+                _channel.write(_out);
+                if (_out.hasRemaining()) {
+                    _key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                _out = null;
+                if (_close) {
+                    close();
+                    return;
+                }
+                _key.interestOps(SelectionKey.OP_READ);
+                process();
+            } catch (IOException ex) {
+                close();
+            }
+        }
+
+        private void close() {
+            _key.cancel();
+            closeQuietly(_channel);
+        }
+    }
+
+    /**
+     * @return end of a chunked body starting at the offset, or -1 when it has
+     * not been received completely
+     */
+    private static int chunkedEnd(byte[] data, int offset, int limit) {
+        byte[] crlf = {'\r', '\n'};
+        int position = offset;
+        while (true) {
+            int lineEnd = indexOf(data, position, limit, crlf);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            String size = new String(data, position, lineEnd - position, ISO_8859_1);
+            int extension = size.indexOf(';');
+            int length = Integer.parseInt((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+            position = lineEnd + crlf.length;
+            if (length == 0) {
+                // Skip the trailers, up to and including the empty line.
+                while (true) {
+                    lineEnd = indexOf(data, position, limit, crlf);
+                    if (lineEnd < 0) {
+                        return -1;
+                    }
+                    boolean empty = lineEnd == position;
+                    position = lineEnd + crlf.length;
+                    if (empty) {
+                        return position;
+                    }
+                }
+            }
+            position += length + crlf.length;
+            if (position > limit) {
+                return -1;
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int limit, byte[] pattern) {
+        outer:
+        for (int i = from; i <= limit - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.http.client.cache.Resource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class OffHeapResourceFactoryTest {
+
+    @Test
+    public void testMemoryMatchesLength() throws IOException {
+        OffHeapResourceFactory factory = new OffHeapResourceFactory();
+        for (int length : new int[]{0, 10, ResponseBodyReader.BUFFER_SIZE, ResponseBodyReader.BUFFER_SIZE * 2 + 1}) {
+            byte[] body = new byte[length];
+            for (int i = 0; i < length; i++) {
+                body[i] = (byte) i;
+            }
+            Resource resource = factory.generate("test", new ByteArrayInputStream(body), null);
+            assertEquals(length, resource.length());
+            assertEquals(length, ((OffHeapResourceFactory.OffHeapResource) resource).capacity());
+            InputStream content = resource.getInputStream();
+            byte[] read = new byte[length];
+            int offset = 0;
+            int count;
+            while (offset < length && (count = content.read(read, offset, length - offset)) > 0) {
+                offset += count;
+            }
+            assertArrayEquals(body, read);
+        }
+    }
+}
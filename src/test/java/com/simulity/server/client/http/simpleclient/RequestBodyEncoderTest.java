@@ -0,0 +1,107 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class RequestBodyEncoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testFormMatchesUrlEncodedUtils() throws IOException {
+        List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+        parameters.add(new BasicNameValuePair("name", "value with spaces & symbols=/?"));
+        parameters.add(new BasicNameValuePair("flag", null));
+        parameters.add(new BasicNameValuePair("café", "€ 5 😀"));
+        for (int i = 0; i < 1000; i++) {
+            parameters.add(new BasicNameValuePair("n" + i, "v-_.*" + i));
+        }
+
+        HttpEntity latin = RequestBodyEncoder.form(parameters);
+        assertEquals(RequestBodyEncoder.FORM.toString(), latin.getContentType().getValue());
+        assertEquals(URLEncodedUtils.format(parameters, "ISO-8859-1"), ResponseBodyReader.toString(latin));
+
+        HttpEntity utf8 = RequestBodyEncoder.form(parameters, ContentType.create(URLEncodedUtils.CONTENT_TYPE, UTF_8));
+        String expected = URLEncodedUtils.format(parameters, "UTF-8");
+        assertEquals(expected.length(), utf8.getContentLength());
+        assertEquals(expected, ResponseBodyReader.toString(utf8));
+    }
+
+    @Test
+    public void testBufferIsRepeatable() throws IOException {
+        byte[] body = "Hello, server".getBytes(UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.length + 2);
+        direct.put((byte) 0).put(body).put((byte) 0).flip().position(1).limit(body.length + 1);
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(body), direct}) {
+            HttpEntity entity = RequestBodyEncoder.buffer(buffer, ContentType.APPLICATION_OCTET_STREAM);
+            assertTrue(entity.isRepeatable());
+            assertEquals(body.length, entity.getContentLength());
+            for (int i = 0; i < 2; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                entity.writeTo(out);
+                assertArrayEquals(body, out.toByteArray());
+            }
+            assertArrayEquals(body, ResponseBodyReader.toByteArray(entity));
+        }
+        assertEquals(1, direct.position());
+    }
+
+    @Test
+    public void testStreamStopsAtLength() throws IOException {
+        byte[] body = new byte[20000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        HttpEntity entity = RequestBodyEncoder.stream(new ByteArrayInputStream(body), 15000, ContentType.APPLICATION_OCTET_STREAM);
+        assertFalse(entity.isRepeatable());
+        assertFalse(entity.isChunked());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals(15000, out.size());
+        assertTrue(RequestBodyEncoder.stream(new ByteArrayInputStream(body), -1, null).isChunked());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class ResponseBodyReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    @Test
+    public void testStringKeepsNewlinesAndCharset() throws IOException {
+        String body = "first line\nsecond line éè\r\nthird";
+        HttpEntity entity = new StringEntity(body, ContentType.create("text/plain", UTF_8));
+        assertEquals(body, ResponseBodyReader.toString(entity));
+    }
+
+    @Test
+    public void testStringDefaultCharset() throws IOException {
+        byte[] bytes = "café".getBytes(ISO_8859_1);
+        assertEquals("caf\uFFFD", ResponseBodyReader.toString(new ByteArrayEntity(bytes)));
+        assertEquals("café", ResponseBodyReader.toString(new ByteArrayEntity(bytes), ISO_8859_1));
+    }
+
+    @Test
+    public void testJsonWithoutCharsetIsUtf8() throws IOException {
+        String json = "{\"name\":\"Zoë Åström\",\"city\":\"Zürich\"}";
+        ByteArrayEntity entity = new ByteArrayEntity(json.getBytes(UTF_8));
+        entity.setContentType("application/json");
+        assertEquals(json, ResponseBodyReader.toString(entity));
+    }
+
+    @Test
+    public void testDeclaredLengthNotAllocatedUpFront() throws IOException {
+        byte[] bytes = body(ResponseBodyReader.MAX_INITIAL_CAPACITY * 3 + 5);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(bytes));
+        // A claim near 2GB would fail with an OutOfMemoryError if trusted.
+        entity.setContentLength(Integer.MAX_VALUE - 16);
+        assertArrayEquals(bytes, ResponseBodyReader.toByteArray(entity));
+        entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(bytes));
+        entity.setContentLength(bytes.length);
+        assertArrayEquals(bytes, ResponseBodyReader.toByteArray(entity));
+    }
+
+    @Test
+    public void testUnknownLengthLargerThanBuffer() throws IOException {
+        byte[] bytes = body(ResponseBodyReader.BUFFER_SIZE * 5 + 17);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(bytes));
+        entity.setContentLength(-1);
+        assertArrayEquals(bytes, ResponseBodyReader.toByteArray(entity));
+    }
+
+    @Test
+    public void testShortBodyWithDeclaredLength() throws IOException {
+        byte[] bytes = body(100);
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(bytes));
+        entity.setContentLength(200);
+        assertArrayEquals(bytes, ResponseBodyReader.toByteArray(entity));
+    }
+
+    @Test
+    public void testByteBuffer() throws IOException {
+        byte[] bytes = body(1000);
+        ByteBuffer buffer = ResponseBodyReader.toByteBuffer(new ByteArrayEntity(bytes));
+        assertEquals(1000, buffer.remaining());
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.get(copy);
+        assertArrayEquals(bytes, copy);
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        final byte[] bytes = body(ResponseBodyReader.BUFFER_SIZE * 3 + 1);
+        final byte[] received = new byte[bytes.length];
+        final int[] position = new int[1];
+        long total = ResponseBodyReader.stream(new ByteArrayEntity(bytes), new ResponseBodyReader.ChunkHandler() {
+            @Override
+            public void onChunk(byte[] buffer, int offset, int length) {
+                System.arraycopy(buffer, offset, received, position[0], length);
+                position[0] += length;
+            }
+        });
+        assertEquals(bytes.length, total);
+        assertArrayEquals(bytes, received);
+    }
+
+    private static byte[] body(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+}
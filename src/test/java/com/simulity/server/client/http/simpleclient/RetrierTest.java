@@ -0,0 +1,116 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class RetrierTest {
+
+    @Test
+    public void testRetryableFailures() {
+        Retrier retrier = new Retrier(new RetryConfiguration());
+        HttpGet get = new HttpGet("http://billing/");
+        HttpPost post = new HttpPost("http://billing/");
+        assertTrue(retrier.isRetryable(get, new NoHttpResponseException("billing failed to respond")));
+        assertFalse(retrier.isRetryable(post, new NoHttpResponseException("billing failed to respond")));
+        assertTrue(retrier.isRetryable(post, new ConnectException("Connection refused")));
+        assertFalse(retrier.isRetryable(get, new SocketTimeoutException("Read timed out")));
+        assertFalse(retrier.isRetryable(get, new ConcurrencyLimitExceededException(new HttpHost("billing"), 1)));
+        get.abort();
+        assertFalse(retrier.isRetryable(get, new ConnectException("Connection refused")));
+    }
+
+    @Test
+    public void testResendableBodies() {
+        Retrier retrier = new Retrier(new RetryConfiguration());
+        HttpPut put = new HttpPut("http://billing/");
+        put.setEntity(new ByteArrayEntity(new byte[]{1}));
+        assertTrue(retrier.isResendable(put));
+        put.setEntity(new InputStreamEntity(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return -1;
+            }
+        }, -1));
+        assertFalse(retrier.isResendable(put));
+        retrier = new Retrier(new RetryConfiguration().idempotentMethods("get"));
+        assertFalse(retrier.isResendable(new HttpPut("http://billing/")));
+        assertTrue(retrier.isResendable(new HttpGet("http://billing/")));
+    }
+
+    @Test
+    public void testJitteredBackoff() {
+        Retrier retrier = new Retrier(new RetryConfiguration().backoff(10, 100, TimeUnit.MILLISECONDS));
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long first = retrier.backoff(1);
+            assertTrue(first >= 0 && first <= TimeUnit.MILLISECONDS.toNanos(10));
+            long late = retrier.backoff(40);
+            assertTrue(late >= 0 && late <= TimeUnit.MILLISECONDS.toNanos(100));
+            max = Math.max(max, late);
+        }
+        assertTrue(max > TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testRetryAfter() {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+        assertEquals(-1, Retrier.retryAfter(response));
+        response.setHeader("Retry-After", "120");
+        assertEquals(TimeUnit.SECONDS.toNanos(120), Retrier.retryAfter(response));
+        response.setHeader("Retry-After", "soon");
+        assertEquals(-1, Retrier.retryAfter(response));
+        response.setHeader("Retry-After", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60)));
+        long wait = Retrier.retryAfter(response);
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(55) && wait <= TimeUnit.SECONDS.toNanos(60));
+        response.setHeader("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(0, Retrier.retryAfter(response));
+    }
+}
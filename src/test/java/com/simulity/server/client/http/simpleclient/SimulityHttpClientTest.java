@@ -25,23 +25,68 @@
  */
 package com.simulity.server.client.http.simpleclient;
 
-import java.io.BufferedReader;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.core.type.TypeReference;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.AbortableHttpRequest;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -51,37 +96,15 @@ import org.junit.Test;
  */
 public class SimulityHttpClientTest {
 
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
     public static String serverLog = "";
+    private static LoopbackHttpServer server;
 
     @BeforeClass
-    public static void beforeClass() {
-        new Thread() {
-            @Override
-            public void run() {
-                String outStream = null;
-                String errStream = null;
-                try {
-                    // run the Fortune command
-                    Process p = Runtime.getRuntime().exec(new String[]{"/usr/local/bin/node", "src/main/resources/NodeJsEchoServer.js"});
-
-                    BufferedReader stdIn = new BufferedReader(new InputStreamReader(p.getInputStream()));
-
-                    BufferedReader stdErr = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-                    while ((outStream = stdIn.readLine()) != null) {
-                        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "SERVER STDOUT: {0}", outStream);
-                        serverLog += outStream + "\n";
-                    }
-
-                    while ((errStream = stdErr.readLine()) != null) {
-                        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "SERVER STDERR: {0}", errStream);
-                    }
-
-                } catch (IOException ex) {
-                    Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.WARNING, "IOException when attmpeting to process Fortune command.", ex);
-                }
-            }
-        }.start();
+    public static void beforeClass() throws IOException {
+        server = new LoopbackHttpServer().port(8081).start();
+        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "Server Listening on port: {0}", server.getPort());
     }
 
     @Test
@@ -149,6 +172,35 @@ public class SimulityHttpClientTest {
         serverLog += "\n\n\nSimple PATCH requests ended.\n\n\n";
     }
 
+    @Test
+    public void testThreadedSimpleGetRequests() {
+        Thread[] threads = new Thread[64];
+        serverLog += "\n\n\nMulti-Threaded Simple GET requests started.\n\n\n";
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            SimulityHttpClient.simpleGetRequest("http://localhost:8081");
+                        }
+                    } catch (IOException ex) {
+                        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        serverLog += "\n\n\nMulti-Threaded Simple GET requests ended.\n\n\n";
+    }
+
     @Test
     public void testIterativeGetConnectionPool() {
         SimulityHttpClient completeInstance = SimulityHttpClient.getCompleteInstance();
@@ -436,6 +488,855 @@ public class SimulityHttpClientTest {
         }
     }
 
+    @Test
+    public void testAsyncGetConnectionPool() {
+        SimulityHttpClient completeInstance = SimulityHttpClient.getCompleteInstance();
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<CompletableFuture<HttpResponse>>();
+        serverLog += "\n\n\nAsynchronous ThreadPool GET requests started.\n\n\n";
+        for (int i = 0; i < 1024; i++) {
+            futures.add(completeInstance.executeAsync(completeInstance.get("http://localhost:8081")));
+        }
+        for (CompletableFuture<HttpResponse> future : futures) {
+            try {
+                HttpResponse response = future.get();
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            } catch (InterruptedException ex) {
+                Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+            } catch (ExecutionException ex) {
+                Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        serverLog += "\n\n\nAsynchronous ThreadPool GET requests ended.\n\n\n";
+        completeInstance.destroy();
+    }
+
+    @Test
+    public void testVirtualThreadedGetConnectionPool() {
+        SimulityHttpClient completeInstance = SimulityHttpClient.getCompleteInstance().executionMode(ExecutionMode.VIRTUAL_THREADS);
+        List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        for (int i = 0; i < 1024; i++) {
+            requests.add(completeInstance.get("http://localhost:8081"));
+        }
+        serverLog += "\n\n\nVirtual-Threaded GET requests started.\n\n\n";
+        try {
+            for (Future<HttpResponse> future : completeInstance.invokeAll(requests)) {
+                try {
+                    assertEquals(200, future.get().getStatusLine().getStatusCode());
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        serverLog += "\n\n\nVirtual-Threaded GET requests ended.\n\n\n";
+        completeInstance.executionMode(ExecutionMode.PLATFORM_THREADS).destroy();
+    }
+
+    @Test
+    public void testPoolConfiguration() {
+        ConnectionPoolConfiguration configuration = new ConnectionPoolConfiguration()
+                .maxTotal(400)
+                .defaultMaxPerRoute(100)
+                .maxPerRoute("localhost", 8081, 300)
+                .connectionTtl(30, TimeUnit.SECONDS)
+                .leaseTimeout(5, TimeUnit.SECONDS);
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(registry);
+        configuration.applyTo(connectionManager);
+
+        assertEquals(400, connectionManager.getMaxTotal());
+        assertEquals(100, connectionManager.getDefaultMaxPerRoute());
+        assertEquals(300, connectionManager.getMaxPerRoute(new HttpRoute(new HttpHost("localhost", 8081))));
+        assertEquals(100, connectionManager.getMaxPerRoute(new HttpRoute(new HttpHost("localhost", 8082))));
+        assertEquals(5000, configuration.getLeaseTimeout());
+        connectionManager.shutdown();
+
+        SimulityHttpClient completeInstance = SimulityHttpClient.getCompleteInstance(configuration);
+        completeInstance.destroy();
+    }
+
+    @Test
+    public void testQuietHotPath() {
+        ch.qos.logback.classic.Logger exchangeLogger = (ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+                .getLogger(SimulityHttpClient.class.getName() + ".exchange");
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+        appender.start();
+        exchangeLogger.addAppender(appender);
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().quietHotPath(true).build();
+        for (int i = 0; i < 10; i++) {
+            HttpGet get = completeInstance.get("http://localhost:8081");
+            try {
+                completeInstance.responseToString(completeInstance.execute(get), get);
+            } catch (IOException ex) {
+                Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        completeInstance.destroy();
+        exchangeLogger.detachAppender(appender);
+
+        assertEquals(10, appender.list.size());
+        for (ILoggingEvent event : appender.list) {
+            assertTrue(event.getFormattedMessage().startsWith("method=GET uri=http://localhost:8081 status="));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().metrics("test").build();
+        ObjectName name = new ObjectName("com.simulity.server.client.http:type=SimulityHttpClient,name=\"test\"");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+        for (int i = 0; i < 10; i++) {
+            HttpGet get = completeInstance.get("http://localhost:8081");
+            try {
+                completeInstance.responseToString(completeInstance.execute(get), get);
+            } catch (IOException ex) {
+                Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        ClientMetrics metrics = completeInstance.getMetrics();
+        assertEquals(10, metrics.getRequests());
+        assertEquals(10, metrics.getTotal().getCount());
+        assertEquals(10, metrics.getLeaseWait().getCount());
+        assertTrue(metrics.getConnect().getCount() >= 1);
+        assertEquals(0, metrics.getPool().getLeased());
+        assertTrue(metrics.getRoutes().containsKey("http://localhost:8081"));
+        assertEquals(10L, server.getAttribute(name, "Requests"));
+        completeInstance.destroy();
+        assertFalse(server.isRegistered(name));
+        completeInstance.setupThreadPool();
+        assertTrue(server.isRegistered(name));
+        completeInstance.destroy();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testLoopbackServerModes() throws IOException {
+        LoopbackHttpServer modes = new LoopbackHttpServer().bodySize(100000).chunked(true, 4096).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            HttpGet get = completeInstance.get(modes.url());
+            HttpResponse response = completeInstance.execute(get);
+            assertTrue(response.getEntity().isChunked());
+            assertEquals(100000, completeInstance.responseToBytes(response, get).length);
+
+            modes.chunked(false, 4096).status(503).keepAlive(false).delay(50, TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            get = completeInstance.get(modes.url());
+            response = completeInstance.execute(get);
+            assertEquals(503, response.getStatusLine().getStatusCode());
+            assertEquals("close", response.getFirstHeader("Connection").getValue());
+            assertEquals(100000, completeInstance.responseToBytes(response, get).length);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertEquals(2, modes.getRequestCount());
+        } finally {
+            completeInstance.destroy();
+            modes.close();
+        }
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        LoopbackHttpServer slow = new LoopbackHttpServer().delay(20, TimeUnit.MILLISECONDS).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            for (int i = 0; i < 200; i++) {
+                requests.add(completeInstance.get(i % 10 == 0 ? slow.url() : "http://localhost:8081"));
+            }
+            requests.add(completeInstance.get("http://localhost:1"));
+            long start = System.nanoTime();
+            List<BatchResult> results = completeInstance.executeBatch(requests,
+                    new BatchOptions().concurrency(16).maxPerHost(4));
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(requests.size(), results.size());
+            for (int i = 0; i < 200; i++) {
+                assertSame(requests.get(i), results.get(i).getRequest());
+                assertTrue(results.get(i).isSuccess());
+                assertEquals(200, results.get(i).getResponse().getStatusLine().getStatusCode());
+            }
+            assertFalse(results.get(200).isSuccess());
+            assertTrue(results.get(200).getFailure() instanceof IOException);
+            assertEquals(20, slow.getRequestCount());
+            // 20 delayed requests, 4 at a time.
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(5 * 20));
+        } finally {
+            completeInstance.destroy();
+            slow.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testExecuteBatchError() throws Exception {
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
+                if (request.getURI().getPath().equals("/broken")) {
+                    throw new AssertionError("Broken");
+                }
+                BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+                response.setEntity(new StringEntity("ok", ContentType.TEXT_PLAIN));
+                return response;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().transport(transport).build();
+        try {
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            for (int i = 0; i < 8; i++) {
+                requests.add(completeInstance.get(i == 3 ? "http://localhost/broken" : "http://localhost/" + i));
+            }
+            try {
+                completeInstance.executeBatch(requests, new BatchOptions().concurrency(4));
+                fail("Batch completed despite the error");
+            } catch (AssertionError ex) {
+                assertEquals("Broken", ex.getMessage());
+            }
+        } finally {
+            completeInstance.destroy();
+        }
+    }
+
+    @Test
+    public void testExecutePipelined() throws Exception {
+        LoopbackHttpServer pipelined = new LoopbackHttpServer().start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            for (int i = 0; i < 100; i++) {
+                requests.add(i % 2 == 0 ? completeInstance.get(pipelined.url() + "/" + i) : completeInstance.delete(pipelined.url()));
+            }
+            List<BatchResult> results = completeInstance.executePipelined(requests, 8);
+            for (int i = 0; i < 100; i++) {
+                assertSame(requests.get(i), results.get(i).getRequest());
+                assertEquals("Hello, client\n", completeInstance.responseToString(results.get(i).getResponse(), requests.get(i)));
+            }
+            assertEquals(100, pipelined.getRequestCount());
+            assertEquals(1, pipelined.getConnectionCount());
+
+            // The server closes after every response, the rest falls back.
+            pipelined.keepAlive(false);
+            requests.clear();
+            for (int i = 0; i < 10; i++) {
+                requests.add(completeInstance.get(pipelined.url()));
+            }
+            results = completeInstance.executePipelined(requests, 4);
+            for (BatchResult result : results) {
+                assertTrue(result.isSuccess());
+                assertEquals(200, result.getResponse().getStatusLine().getStatusCode());
+            }
+        } finally {
+            completeInstance.destroy();
+            pipelined.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPipelinedRejectsPost() throws Exception {
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            requests.add(completeInstance.post("http://localhost:8081", new ArrayList<NameValuePair>()));
+            completeInstance.executePipelined(requests, 4);
+        } finally {
+            completeInstance.destroy();
+        }
+    }
+
+    @Test
+    public void testHttp2Transport() throws Exception {
+        H2cServer server = new H2cServer().delay(100, TimeUnit.MILLISECONDS).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.getHttpInstance(Protocol.HTTP_2);
+        try {
+            // The first request upgrades the connection to h2c.
+            HttpGet get = completeInstance.get(server.url());
+            HttpResponse response = completeInstance.execute(get);
+            assertEquals(HTTP_2, response.getStatusLine().getProtocolVersion());
+            assertEquals("Hello, client\n", completeInstance.responseToString(response, get));
+
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            for (int i = 0; i < 20; i++) {
+                requests.add(completeInstance.get(server.url() + "/profiles?id=" + i));
+            }
+            for (BatchResult result : completeInstance.executePipelined(requests, 8)) {
+                assertEquals(HTTP_2, result.getResponse().getStatusLine().getProtocolVersion());
+                assertEquals("Hello, client\n", EntityUtils.toString(result.getResponse().getEntity()));
+            }
+            assertEquals(21, server.getRequestCount());
+            assertEquals(1, server.getConnectionCount());
+            assertTrue(server.getMaxConcurrentStreams() > 1);
+
+            // Set up again after destroy(), the instance still speaks HTTP/2.
+            completeInstance.destroy();
+            completeInstance.setupThreadPool();
+            get = completeInstance.get(server.url());
+            response = completeInstance.execute(get);
+            assertEquals(HTTP_2, response.getStatusLine().getProtocolVersion());
+            completeInstance.responseToString(response, get);
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp2TransportAbort() throws Exception {
+        H2cServer server = new H2cServer().delay(2, TimeUnit.SECONDS).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.getHttpInstance(Protocol.HTTP_2);
+        try {
+            final HttpGet get = completeInstance.get(server.url());
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    get.abort();
+                }
+            }.start();
+            long start = System.nanoTime();
+            try {
+                completeInstance.execute(get);
+                fail("Aborted request answered");
+            } catch (InterruptedIOException ex) {
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp2TransportFallsBackToHttp11() throws Exception {
+        SimulityHttpClient completeInstance = SimulityHttpClient.getHttpInstance(Protocol.HTTP_2);
+        try {
+            for (int i = 0; i < 10; i++) {
+                HttpGet get = completeInstance.get("http://localhost:8081");
+                HttpResponse response = completeInstance.execute(get);
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                assertEquals(HttpVersion.HTTP_1_1, response.getStatusLine().getProtocolVersion());
+                assertEquals("Hello, client\n", completeInstance.responseToString(response, get));
+            }
+            ArrayList<NameValuePair> parameters = new ArrayList<NameValuePair>();
+            parameters.add(new BasicNameValuePair("name", "value"));
+            HttpPost post = completeInstance.post("http://localhost:8081", parameters);
+            assertEquals("Hello, client\n", completeInstance.responseToString(completeInstance.execute(post), post));
+
+            List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+            for (int i = 0; i < 50; i++) {
+                requests.add(completeInstance.get("http://localhost:8081"));
+            }
+            for (BatchResult result : completeInstance.executePipelined(requests, 8)) {
+                assertEquals(200, result.getResponse().getStatusLine().getStatusCode());
+            }
+        } finally {
+            completeInstance.destroy();
+        }
+    }
+
+    @Test
+    public void testResponseCache() throws Exception {
+        LoopbackHttpServer cached = new LoopbackHttpServer().header("Cache-Control", "max-age=60").start();
+        LoopbackHttpServer revalidated = new LoopbackHttpServer().header("Cache-Control", "no-cache").etag("\"v1\"").start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .cache(new CacheConfiguration().maxEntries(10).offHeap(true)).build();
+        try {
+            for (int i = 0; i < 10; i++) {
+                HttpGet get = completeInstance.get(cached.url());
+                assertEquals("Hello, client\n", completeInstance.responseToString(completeInstance.execute(get), get));
+                get = completeInstance.get(revalidated.url());
+                HttpResponse response = completeInstance.execute(get);
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                assertEquals("Hello, client\n", completeInstance.responseToString(response, get));
+            }
+            assertEquals(1, cached.getRequestCount());
+            // Every request is revalidated, but only the first transfers the body.
+            assertEquals(10, revalidated.getRequestCount());
+        } finally {
+            completeInstance.destroy();
+            cached.close();
+            revalidated.close();
+        }
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        LoopbackHttpServer slow = new LoopbackHttpServer().delay(200, TimeUnit.MILLISECONDS).start();
+        final SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().singleFlight(true).build();
+        try {
+            final String url = slow.url();
+            List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+            for (int i = 0; i < 32; i++) {
+                final CompletableFuture<String> future = new CompletableFuture<String>();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            HttpGet get = completeInstance.get(url);
+                            future.complete(completeInstance.responseToString(completeInstance.execute(get), get));
+                        } catch (Exception ex) {
+                            future.completeExceptionally(ex);
+                        }
+                    }
+                }.start();
+                futures.add(future);
+            }
+            for (CompletableFuture<String> future : futures) {
+                assertEquals("Hello, client\n", future.get());
+            }
+            assertTrue(slow.getRequestCount() < 32);
+
+            // Requests with a body are never shared.
+            HttpPost post = completeInstance.post(url, new ArrayList<NameValuePair>());
+            completeInstance.responseToString(completeInstance.execute(post), post);
+        } finally {
+            completeInstance.destroy();
+            slow.close();
+        }
+    }
+
+    @Test
+    public void testSingleFlightFailure() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                Throwable ex = failure.get();
+                if (ex instanceof IOException) {
+                    throw (IOException) ex;
+                }
+                throw (Error) ex;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        final SimulityHttpClient completeInstance = SimulityHttpClient.builder().transport(transport)
+                .singleFlight(true).build();
+        try {
+            for (Throwable leader : new Throwable[]{new IOException("Refused"), new AssertionError("Broken")}) {
+                failure.set(leader);
+                List<CompletableFuture<Throwable>> futures = new ArrayList<CompletableFuture<Throwable>>();
+                for (int i = 0; i < 8; i++) {
+                    final CompletableFuture<Throwable> future = new CompletableFuture<Throwable>();
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                completeInstance.execute(completeInstance.get("http://localhost/profiles"));
+                                future.complete(null);
+                            } catch (Throwable ex) {
+                                future.complete(ex);
+                            }
+                        }
+                    }.start();
+                    futures.add(future);
+                }
+                Set<Throwable> thrown = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+                for (CompletableFuture<Throwable> future : futures) {
+                    Throwable ex = future.get(5, TimeUnit.SECONDS);
+                    if (leader instanceof Error) {
+                        assertSame(leader, ex);
+                    } else {
+                        assertTrue(ex == leader || ex.getCause() == leader);
+                        assertTrue(thrown.add(ex));
+                    }
+                }
+            }
+        } finally {
+            completeInstance.destroy();
+        }
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        LoopbackHttpServer compressing = new LoopbackHttpServer().bodySize(16384).gzip(true).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .compression(true).compressRequestBodies(true).build();
+        try {
+            HttpGet get = completeInstance.get(compressing.url());
+            HttpResponse response = completeInstance.execute(get);
+            assertNull(response.getFirstHeader("Content-Encoding"));
+            assertEquals(16384, completeInstance.responseToBytes(response, get).length);
+            assertTrue(compressing.getLastRequestHeaders().contains("Accept-Encoding: gzip"));
+
+            ArrayList<NameValuePair> parameters = new ArrayList<NameValuePair>();
+            parameters.add(new BasicNameValuePair("message", "Hello, server"));
+            HttpPost post = completeInstance.post(compressing.url(), parameters);
+            completeInstance.responseToBytes(completeInstance.execute(post), post);
+            assertTrue(compressing.getLastRequestHeaders().contains("Content-Encoding: gzip"));
+        } finally {
+            completeInstance.destroy();
+            compressing.close();
+        }
+    }
+
+    @Test
+    public void testRequestBodies() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            ArrayList<NameValuePair> parameters = new ArrayList<NameValuePair>();
+            parameters.add(new BasicNameValuePair("message", "Hello, server"));
+            HttpPut put = completeInstance.put(server.url(), parameters);
+            completeInstance.responseToString(completeInstance.execute(put), put);
+            assertEquals("message=Hello%2C+server", new String(server.getLastRequestBody(), "ISO-8859-1"));
+
+            HttpPatch patch = completeInstance.patch(server.url(), RequestBodyEncoder.json("{\"op\":\"replace\"}"));
+            completeInstance.responseToString(completeInstance.execute(patch), patch);
+            assertEquals("{\"op\":\"replace\"}", new String(server.getLastRequestBody(), "UTF-8"));
+            assertTrue(server.getLastRequestHeaders().contains("Content-Length: 16"));
+            assertTrue(server.getLastRequestHeaders().contains("Content-Type: application/json"));
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testFileTransfer() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().bodySize(300000).ranges(true).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        Path file = Files.createTempFile("download", ".bin");
+        try {
+            Files.delete(file);
+            assertEquals(300000, completeInstance.downloadTo(completeInstance.get(server.url()), file));
+            byte[] expected = Files.readAllBytes(file);
+            assertEquals(300000, expected.length);
+
+            // Resume from part of the body, then again once complete.
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.truncate(100000);
+            channel.close();
+            assertEquals(300000, completeInstance.downloadTo(completeInstance.get(server.url()), file));
+            assertTrue(server.getLastRequestHeaders().contains("Range: bytes=100000-"));
+            assertArrayEquals(expected, Files.readAllBytes(file));
+            assertEquals(300000, completeInstance.downloadTo(completeInstance.get(server.url()), file));
+            assertArrayEquals(expected, Files.readAllBytes(file));
+
+            HttpPut put = completeInstance.put(server.url(), RequestBodyEncoder.file(file, ContentType.APPLICATION_OCTET_STREAM));
+            completeInstance.responseToString(completeInstance.execute(put), put);
+            assertTrue(server.getLastRequestHeaders().contains("Content-Length: 300000"));
+            assertArrayEquals(expected, server.getLastRequestBody());
+        } finally {
+            Files.deleteIfExists(file);
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testFileTransferWithCompression() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().bodySize(300000).ranges(true).gzip(true).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().compression(true).build();
+        Path file = Files.createTempFile("download", ".bin");
+        try {
+            Files.delete(file);
+            assertEquals(300000, completeInstance.downloadTo(completeInstance.get(server.url()), file));
+            assertTrue(server.getLastRequestHeaders().contains("Accept-Encoding: identity"));
+            byte[] expected = Files.readAllBytes(file);
+
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.truncate(100000);
+            channel.close();
+            assertEquals(300000, completeInstance.downloadTo(completeInstance.get(server.url()), file));
+            assertTrue(server.getLastRequestHeaders().contains("Range: bytes=100000-"));
+            assertArrayEquals(expected, Files.readAllBytes(file));
+        } finally {
+            Files.deleteIfExists(file);
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testResponseAs() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().body("[{\"iccid\":\"8944\",\"version\":1},{\"iccid\":\"8945\",\"version\":2}]").start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp().build();
+        try {
+            HttpGet get = completeInstance.get(server.url());
+            List<JsonResponseReaderTest.Profile> profiles = completeInstance.responseAs(completeInstance.execute(get), get,
+                    new TypeReference<List<JsonResponseReaderTest.Profile>>() {
+            });
+            assertEquals("8945", profiles.get(1).iccid);
+
+            final List<Integer> versions = new ArrayList<Integer>();
+            get = completeInstance.get(server.url());
+            completeInstance.streamJsonArray(completeInstance.execute(get), get, JsonResponseReaderTest.Profile.class,
+                    new JsonResponseReader.ElementHandler<JsonResponseReaderTest.Profile>() {
+                @Override
+                public void onElement(JsonResponseReaderTest.Profile element) {
+                    versions.add(element.version);
+                }
+            });
+            assertEquals(2, versions.size());
+            assertEquals(2, (int) versions.get(1));
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .poolConfiguration(new ConnectionPoolConfiguration().defaultMaxPerRoute(6)).build();
+        try {
+            assertEquals(4, completeInstance.prewarm("localhost", server.getPort(), 4));
+            waitFor(server, 4);
+            assertEquals(4, server.getConnectionCount());
+            assertEquals(0, completeInstance.prewarm("localhost", server.getPort(), 4));
+            for (int i = 0; i < 8; i++) {
+                HttpGet get = completeInstance.get(server.url());
+                completeInstance.responseToString(completeInstance.execute(get), get);
+            }
+            waitFor(server, 4);
+            assertEquals(4, server.getConnectionCount());
+
+            // Only the missing connections are opened.
+            assertEquals(2, completeInstance.prewarm("localhost", server.getPort(), 6));
+            waitFor(server, 6);
+            assertEquals(6, server.getConnectionCount());
+
+            // A new pool is warmed again in the background.
+            completeInstance.destroy();
+            completeInstance.setupThreadPool();
+            waitFor(server, 12);
+            assertEquals(12, server.getConnectionCount());
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testMinIdlePerRoute() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .poolConfiguration(new ConnectionPoolConfiguration().minIdlePerRoute(3)).build();
+        try {
+            HttpGet get = completeInstance.get(server.url());
+            completeInstance.responseToString(completeInstance.execute(get), get);
+            waitFor(server, 3);
+            assertEquals(3, server.getConnectionCount());
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    private static void waitFor(LoopbackHttpServer server, int connections) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnectionCount() < connections && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // Let any surplus connection show up.
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testLoadBalancedService() throws Exception {
+        LoopbackHttpServer fast = new LoopbackHttpServer().start();
+        LoopbackHttpServer slow = new LoopbackHttpServer().delay(100, TimeUnit.MILLISECONDS).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .service("backend", new HttpHost("localhost", fast.getPort()), new HttpHost("localhost", slow.getPort()))
+                .build();
+        try {
+            for (int i = 0; i < 40; i++) {
+                HttpGet get = completeInstance.get("http://backend/profiles?id=" + i);
+                assertEquals("Hello, client\n", completeInstance.responseToString(completeInstance.execute(get), get));
+            }
+            assertTrue(slow.getRequestCount() <= 2);
+            assertEquals(40, fast.getRequestCount() + slow.getRequestCount());
+            assertTrue(fast.getLastRequestHeaders().startsWith("GET /profiles?id=39 HTTP/1.1"));
+            assertTrue(fast.getLastRequestHeaders().contains("Host: localhost:" + fast.getPort()));
+            assertEquals(2, completeInstance.getServiceEndpoints("backend").size());
+        } finally {
+            completeInstance.destroy();
+            fast.close();
+            slow.close();
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().delay(200, TimeUnit.MILLISECONDS).start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .concurrencyLimit(new ConcurrencyLimitConfiguration().initialLimit(2).bounds(1, 2))
+                .build();
+        try {
+            List<CompletableFuture<HttpResponse>> futures = new ArrayList<CompletableFuture<HttpResponse>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(completeInstance.executeAsync(completeInstance.get(server.url())));
+            }
+            int completed = 0;
+            int rejected = 0;
+            for (CompletableFuture<HttpResponse> future : futures) {
+                try {
+                    HttpResponse response = future.get(5, TimeUnit.SECONDS);
+                    assertEquals(200, response.getStatusLine().getStatusCode());
+                    EntityUtils.consume(response.getEntity());
+                    completed++;
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof ConcurrencyLimitExceededException);
+                    rejected++;
+                }
+            }
+            assertEquals(2, completed);
+            assertEquals(2, rejected);
+            assertEquals(2, server.getRequestCount());
+            assertEquals(Integer.valueOf(2), completeInstance.getConcurrencyLimits().get(new HttpHost("localhost", server.getPort())));
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHedging() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
+                BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+                if (calls.getAndIncrement() > 0) {
+                    response.setEntity(new StringEntity("hedge", ContentType.TEXT_PLAIN));
+                    return response;
+                }
+                final CountDownLatch aborted = new CountDownLatch(1);
+                ((AbortableHttpRequest) request).setReleaseTrigger(new ConnectionReleaseTrigger() {
+                    @Override
+                    public void releaseConnection() {
+                    }
+
+                    @Override
+                    public void abortConnection() {
+                        aborted.countDown();
+                    }
+                });
+                try {
+                    if (aborted.await(5, TimeUnit.SECONDS)) {
+                        throw new InterruptedIOException("Aborted");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                response.setEntity(new StringEntity("first", ContentType.TEXT_PLAIN));
+                return response;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().transport(transport)
+                .hedging(new HedgingConfiguration().delay(20, 20, TimeUnit.MILLISECONDS))
+                .build();
+        try {
+            long start = System.nanoTime();
+            HttpGet get = completeInstance.get("http://localhost/profiles");
+            assertEquals("hedge", completeInstance.responseToString(completeInstance.execute(get), get));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            // Only the losing copy is aborted, the request can be sent again.
+            assertFalse(get.isAborted());
+            assertEquals(2, calls.get());
+            assertEquals(1, completeInstance.getHedgeCount());
+        } finally {
+            completeInstance.destroy();
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        LoopbackHttpServer server = new LoopbackHttpServer().status(503).header("Retry-After", "0").start();
+        SimulityHttpClient completeInstance = SimulityHttpClient.builder().supportHttp()
+                .retry(new RetryConfiguration().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS))
+                .build();
+        try {
+            HttpGet get = completeInstance.get(server.url());
+            HttpResponse response = completeInstance.execute(get);
+            assertEquals(503, response.getStatusLine().getStatusCode());
+            completeInstance.responseToString(response, get);
+            assertEquals(3, server.getRequestCount());
+            assertEquals(2, completeInstance.getRetryCount());
+
+            // Not idempotent, and the server may have acted on it.
+            HttpPost post = completeInstance.post(server.url(), RequestBodyEncoder.json("{}"));
+            response = completeInstance.execute(post);
+            assertEquals(503, response.getStatusLine().getStatusCode());
+            completeInstance.responseToString(response, post);
+            assertEquals(4, server.getRequestCount());
+
+            ServerSocket closed = new ServerSocket(0);
+            int port = closed.getLocalPort();
+            closed.close();
+            try {
+                completeInstance.execute(completeInstance.post("http://localhost:" + port, RequestBodyEncoder.json("{}")));
+                fail("Connected to a closed port");
+            } catch (ConnectException ex) {
+                // Never sent, so retried whatever the method.
+                assertEquals(1, ex.getSuppressed().length);
+            }
+            assertEquals(4, completeInstance.getRetryCount());
+        } finally {
+            completeInstance.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSharedConnectionPool() {
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        ConnectionPoolConfiguration configuration = new ConnectionPoolConfiguration().maxTotal(64);
+
+        SharedConnectionPool first = SharedConnectionPool.acquire(registry, configuration);
+        SharedConnectionPool second = SharedConnectionPool.acquire(registry, new ConnectionPoolConfiguration().maxTotal(64));
+        SharedConnectionPool other = SharedConnectionPool.acquire(registry, new ConnectionPoolConfiguration().maxTotal(32));
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, first.references());
+
+        first.release();
+        assertEquals(64, second.getConnectionManager().getMaxTotal());
+        second.release();
+        assertEquals(0, first.references());
+        assertNotSame(first, SharedConnectionPool.acquire(registry, configuration));
+        other.release();
+    }
+
+    @Test
+    public void testIndependentInstances() {
+        SimulityHttpClient first = SimulityHttpClient.getCompleteInstance();
+        SimulityHttpClient second = SimulityHttpClient.getCompleteInstance();
+        assertNotSame(first, second);
+        assertSame(SimulityHttpClient.getInstance(), SimulityHttpClient.getInstance());
+        first.destroy();
+        try {
+            HttpGet get = second.get("http://localhost:8081");
+            second.responseToString(second.execute(get), get);
+        } catch (IOException ex) {
+            Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        second.destroy();
+    }
+
     static class ThreadHolder extends Thread {
 
         private final HttpClient httpClient;
@@ -473,33 +1374,8 @@ public class SimulityHttpClientTest {
 
     @AfterClass
     public static void afterClass() {
-
-        new Thread() {
-            @Override
-            public void run() {
-                String outStream = null;
-                String errStream = null;
-                try {
-                    // run the Fortune command
-                    Process p = Runtime.getRuntime().exec(new String[]{"killall", "node"});
-
-                    BufferedReader stdIn = new BufferedReader(new InputStreamReader(p.getInputStream()));
-
-                    BufferedReader stdErr = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-                    while ((outStream = stdIn.readLine()) != null) {
-                        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "SERVER STDOUT: {0}", outStream);
-                    }
-
-                    while ((errStream = stdErr.readLine()) != null) {
-                        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "SERVER STDERR: {0}", errStream);
-                    }
-
-                } catch (IOException ex) {
-                    Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.WARNING, "IOException when attmpeting to process Fortune command.", ex);
-                }
-            }
-        }.start();
+        server.close();
+        Logger.getLogger(SimulityHttpClientTest.class.getName()).log(Level.INFO, "Server served {0} requests.", server.getRequestCount());
         System.out.println(serverLog);
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * 
+ * Simulity Labs Ltd.
+ * 
+ * Copyright (c) Simulity Labs Ltd. All rights reserved.
+ *
+ * This source code is the property of Simulity Labs Ltd. Redistribution and
+ * use in source (source code) or binary (object code) forms with or without 
+ * modification, for commercial, educational or research purposes is not
+ * permitted without the prior written consent of Simulity Labs Limited 
+ *
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE, UNLESS PRIOR WRITTEN CONSENT STATES OTHERWISE.
+ * 
+ *
+ */
+package com.simulity.server.client.http.simpleclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import org.apache.http.client.methods.HttpGet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christopher Burke <christopher.burke@simulity.com>
+ */
+public class TlsConfigurationTest {
+
+    private static final String CIPHER_SUITE = "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256";
+    private HttpsServer _server;
+    private final List<SSLSession> _sessions = new CopyOnWriteArrayList<SSLSession>();
+    private KeyStore _keyStore;
+
+    @Before
+    public void setUp() throws Exception {
+        _keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = TlsConfigurationTest.class.getResourceAsStream("/localhost.p12");
+        try {
+            _keyStore.load(in, "changeit".toCharArray());
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(_keyStore, "changeit".toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        _server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        _server.setHttpsConfigurator(new HttpsConfigurator(context));
+        _server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                _sessions.add(((HttpsExchange) exchange).getSSLSession());
+                byte[] body = "Hello, client\n".getBytes("ISO-8859-1");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        _server.start();
+    }
+
+    @After
+    public void tearDown() {
+        _server.stop(0);
+    }
+
+    @Test
+    public void testSessionResumedAcrossPools() throws Exception {
+        TlsConfiguration tls = new TlsConfiguration()
+                .trustMaterial(_keyStore)
+                .protocols("TLSv1.2")
+                .cipherSuites(CIPHER_SUITE);
+        SimulityHttpClient client = SimulityHttpClient.builder().supportHttp().supportHttps().tls(tls).build();
+        String url = "https://localhost:" + _server.getAddress().getPort() + "/";
+        try {
+            for (int i = 0; i < 2; i++) {
+                HttpGet get = client.get(url);
+                assertEquals("Hello, client\n", client.responseToString(client.execute(get), get));
+                // A new pool, so a new connection.
+                client.destroy();
+                client.setupThreadPool();
+            }
+        } finally {
+            client.destroy();
+        }
+        assertEquals(2, _sessions.size());
+        assertEquals("TLSv1.2", _sessions.get(0).getProtocol());
+        assertEquals(CIPHER_SUITE, _sessions.get(0).getCipherSuite());
+        assertArrayEquals(_sessions.get(0).getId(), _sessions.get(1).getId());
+    }
+
+    @Test
+    public void testContextSharedByClients() {
+        TlsConfiguration tls = new TlsConfiguration().trustMaterial(_keyStore);
+        assertSame(tls.getSSLContext(), tls.getSSLContext());
+        assertSame(tls.socketFactory(), tls.socketFactory());
+        assertSame(TlsConfiguration.getDefault().getSSLContext(), TlsConfiguration.getDefault().getSSLContext());
+    }
+}